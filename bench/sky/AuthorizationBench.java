@@ -0,0 +1,57 @@
+package sky;
+
+import arc.struct.Seq;
+import mindustry.gen.Player;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка членства в action/chat фильтрах: один проход = каждый онлайн игрок совершил одно действие.
+ * Половина игроков ожидает капчу, как во время волны ботов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthorizationBench {
+
+    @Param({"10", "100", "500"})
+    public int players;
+
+    private Seq<Player> online;
+    private Seq<LegacyEntry> legacy;
+    private AuthorizationRegistry registry;
+
+    @Setup
+    public void setup() {
+        online = BenchSupport.players(players);
+        legacy = new Seq<>();
+        registry = new AuthorizationRegistry();
+        for (int i = 0; i < players; i += 2) {
+            Player player = online.get(i);
+            legacy.add(new LegacyEntry(player.uuid()));
+            registry.add(player, i);
+        }
+    }
+
+    @Benchmark
+    public void legacySeqScan(Blackhole bh) {
+        for (int i = 0; i < online.size; i++) {
+            Player player = online.get(i);
+            bh.consume(!legacy.contains(a -> a.uuid.equals(player.uuid())));
+        }
+    }
+
+    @Benchmark
+    public void registry(Blackhole bh) {
+        for (int i = 0; i < online.size; i++) {
+            bh.consume(!registry.contains(online.get(i)));
+        }
+    }
+
+    record LegacyEntry(String uuid) {}
+}
@@ -0,0 +1,60 @@
+package sky;
+
+import arc.struct.Seq;
+import mindustry.Vars;
+import mindustry.gen.LabelCallPacket;
+import mindustry.gen.Player;
+import mindustry.net.Packet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Показ одного банера всем онлайн игрокам: прежние задачи на игрока (поиск по uuid и новый пакет)
+ * против когорты, рассылающей заранее закодированный пакет.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BannerBench {
+
+    @Param({"10", "100", "500"})
+    public int players;
+
+    private Seq<Player> online;
+    private Seq<String> uuids;
+    private Config.WorldBanner banner;
+    private Packet prepared;
+
+    @Setup
+    public void setup() {
+        online = BenchSupport.players(players);
+        uuids = online.map(Player::uuid);
+        banner = new Config.WorldBanner();
+        prepared = BroadcastCache.banner(banner, banner.timeLife);
+    }
+
+    @Benchmark
+    public void legacyPerPlayerTask() {
+        for (int i = 0; i < uuids.size; i++) {
+            String uuid = uuids.get(i);
+            Player player = online.find(p -> p.uuid().equals(uuid));
+            LabelCallPacket packet = new LabelCallPacket();
+            packet.message = banner.text;
+            packet.duration = banner.timeLife;
+            packet.worldx = banner.x * Vars.tilesize;
+            packet.worldy = banner.y * Vars.tilesize;
+            player.con.send(packet, true);
+        }
+    }
+
+    @Benchmark
+    public void cohort() {
+        for (int i = 0; i < online.size; i++) {
+            BroadcastCache.send(online.get(i).con, prepared);
+        }
+    }
+}
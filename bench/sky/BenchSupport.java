@@ -0,0 +1,49 @@
+package sky;
+
+import arc.struct.Seq;
+import mindustry.gen.Player;
+import mindustry.net.NetConnection;
+
+/**
+ * Заглушки типов Mindustry для бенчмарков: игроки без мира и соединения, которые только считают пакеты.
+ */
+class BenchSupport {
+
+    static Seq<Player> players(int count) {
+        Seq<Player> players = new Seq<>(count);
+        for (int i = 0; i < count; i++) {
+            Player player = Player.create();
+            player.id = i;
+            player.name = "player" + i;
+            player.x = (i * 97) % 4000;
+            player.y = (i * 31) % 4000;
+            player.con = new StubConnection("10.0." + (i >> 8 & 0xff) + "." + (i & 0xff), uuid(i));
+            player.con.player = player;
+            players.add(player);
+        }
+        return players;
+    }
+
+    static String uuid(int i) {
+        // uuid игроков это base64 от 8 байт, длина та же что у настоящих
+        return String.format("%010dA=", i);
+    }
+
+    static class StubConnection extends NetConnection {
+        public int sent;
+
+        public StubConnection(String address, String uuid) {
+            super(address);
+            this.uuid = uuid;
+        }
+
+        @Override
+        public void send(Object object, boolean reliable) {
+            sent++;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
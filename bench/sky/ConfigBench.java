@@ -0,0 +1,59 @@
+package sky;
+
+import arc.files.Fi;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Десериализация {@code rcr-plugin.json} маппером плагина (включая {@link SerializationSupport.ColorMixin}
+ * для цветов освещения и полиморфные банеры) против бинарного снимка {@link ConfigCodec}.
+ * {@code coldMapper} это то, что запуск без снимка платит до первого разбора.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigBench {
+
+    private JsonMapper mapper;
+    private String json;
+    private byte[] snapshot;
+
+    @Setup
+    public void setup() throws Exception {
+        mapper = new ConfigWatcher(new Fi(System.getProperty("java.io.tmpdir"))).mapper();
+        json = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(new Config());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConfigCodec.writeValue(new DataOutputStream(bytes), new Config());
+        snapshot = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Config deserialize() throws Exception {
+        return mapper.readValue(json, Config.class);
+    }
+
+    @Benchmark
+    public Config coldMapper() throws Exception {
+        return new ConfigWatcher(new Fi(System.getProperty("java.io.tmpdir"))).mapper().readValue(json, Config.class);
+    }
+
+    @Benchmark
+    public Object decodeSnapshot() throws Exception {
+        return ConfigCodec.readValue(new DataInputStream(new ByteArrayInputStream(snapshot)));
+    }
+
+    @Benchmark
+    public String serialize() throws Exception {
+        return mapper.writeValueAsString(new Config());
+    }
+}
@@ -0,0 +1,77 @@
+package sky;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рендер описания сервера: прежние {@code getTimeParameter}/{@code formatDesc}
+ * (LocalDateTime, поиск по спискам часов, два replace) против скомпилированного {@link Template}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DescBench {
+
+    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
+
+    private Config config;
+    private Template template;
+
+    @Setup
+    public void setup() {
+        config = new Config();
+        Messages messages = new Messages();
+        try {
+            messages.load(null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Placeholders placeholders = new Placeholders(new DayPeriods(config.dynamicDays.timeParameters, messages));
+        template = placeholders.compile(config.updateDesc.desc);
+    }
+
+    @Benchmark
+    public String legacyFormatDesc() {
+        String status = legacyTimeParameter();
+        return config.updateDesc.desc.replace("%localtime%", LocalDateTime.now().format(formatter))
+                .replace("%status%", legacyLocalize(status));
+    }
+
+    @Benchmark
+    public String legacyTimeParameterOnly() {
+        return legacyTimeParameter();
+    }
+
+    @Benchmark
+    public String template() {
+        return template.render();
+    }
+
+    private static String legacyLocalize(String status) {
+        return switch (status) {
+            case "morning" -> "утро";
+            case "day" -> "день";
+            case "evening" -> "вечер";
+            case "night" -> "ночь";
+            default -> status;
+        };
+    }
+
+    private String legacyTimeParameter() {
+        LocalDateTime dateTime = LocalDateTime.now();
+        for (var parameter : config.dynamicDays.timeParameters.entrySet()) {
+            if (parameter.getValue().contains(dateTime.getHour())) {
+                return parameter.getKey();
+            }
+        }
+        throw new IllegalStateException("Incorrect time parameter!");
+    }
+}
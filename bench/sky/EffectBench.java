@@ -0,0 +1,70 @@
+package sky;
+
+import arc.struct.Seq;
+import mindustry.entities.Effect;
+import mindustry.gen.Player;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск эффекта движения в {@code Trigger.update}: прежний поиск по uuid для каждого онлайн игрока
+ * против обхода только записей {@link EffectRegistry}. Эффекты включены у двух админов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EffectBench {
+
+    @Param({"10", "100", "500"})
+    public int players;
+
+    private Seq<Player> online;
+    private Seq<LegacyEffect> legacy;
+    private EffectRegistry registry;
+    private Config.Effects config;
+    private long now;
+
+    @Setup
+    public void setup() {
+        online = BenchSupport.players(players);
+        legacy = new Seq<>();
+        registry = new EffectRegistry();
+        config = new Config.Effects();
+        Effect effect = new Effect();
+        for (int i = 0; i < 2; i++) {
+            Player admin = online.get(i * (players - 1));
+            legacy.add(new LegacyEffect(admin.uuid(), effect));
+            registry.put(admin, effect);
+        }
+    }
+
+    @Benchmark
+    public void legacyUuidLookup(Blackhole bh) {
+        for (int i = 0; i < online.size; i++) {
+            Player player = online.get(i);
+            var pair = legacy.find(t -> t.uuid.equals(player.uuid()));
+            if (pair != null) {
+                bh.consume(pair.effect);
+            }
+        }
+    }
+
+    @Benchmark
+    public void registry(Blackhole bh) {
+        now += 16;
+        for (var entry : registry.entries()) {
+            entry.player.x += 8; // игрок двигается
+            if (entry.shouldEmit(now, config)) {
+                entry.emitted(now);
+                bh.consume(entry.effect);
+            }
+        }
+    }
+
+    record LegacyEffect(String uuid, Effect effect) {}
+}
@@ -0,0 +1,86 @@
+package sky;
+
+import arc.struct.Seq;
+import mindustry.gen.Player;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость одного серверного тика для напоминаний о коде: прежний вложенный обход
+ * ожидающих × онлайн против продвижения {@link DeadlineWheel}. Все игроки ожидают капчу.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReminderBench {
+
+    static final long tickMillis = 16, reminderMillis = 15000;
+
+    @Param({"10", "100", "500"})
+    public int players;
+
+    private Seq<Player> online;
+    private Seq<LegacyEntry> legacy;
+    private DeadlineWheel wheel;
+    private long now;
+    private int fired;
+
+    @Setup
+    public void setup() {
+        online = BenchSupport.players(players);
+        legacy = new Seq<>();
+        wheel = new DeadlineWheel(250, 512);
+        now = 0;
+        for (int i = 0; i < players; i++) {
+            Player player = online.get(i);
+            // напоминания разнесены по времени, как у игроков, подключавшихся в разные моменты
+            long offset = i * reminderMillis / players;
+            legacy.add(new LegacyEntry(player.uuid(), now - offset));
+            schedule(now, reminderMillis - offset);
+        }
+    }
+
+    private void schedule(long at, long delay) {
+        wheel.schedule(() -> {
+            fired++;
+            schedule(now, reminderMillis);
+        }, at, delay);
+    }
+
+    @Benchmark
+    public void legacyNestedScan(Blackhole bh) {
+        now += tickMillis;
+        for (int a = 0; a < legacy.size; a++) {
+            LegacyEntry entry = legacy.get(a);
+            for (int p = 0; p < online.size; p++) {
+                Player player = online.get(p);
+                if (player.uuid().equals(entry.uuid) && now - entry.lastRememberTime > reminderMillis) {
+                    entry.lastRememberTime = now;
+                    bh.consume(player);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int timingWheel() {
+        now += tickMillis;
+        wheel.advance(now);
+        return fired;
+    }
+
+    static class LegacyEntry {
+        final String uuid;
+        long lastRememberTime;
+
+        LegacyEntry(String uuid, long lastRememberTime) {
+            this.uuid = uuid;
+            this.lastRememberTime = lastRememberTime;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package sky;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Заглушка лобби для проверки {@link HubDirectory}: отвечает на UDP пинг Mindustry данными сервера
+ * в формате {@code NetworkIO.writeServerData}, с заданной задержкой и заполненностью.
+ * <p>
+ * Аргументы {@code key=value}: port, players, limit, delay (мс), name, build. Несколько экземпляров
+ * с разными задержками и нагрузкой позволяют проверить оба режима {@link Config.HubRouting}.
+ */
+public class HubStandIn {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value argument, got: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        int port = Integer.parseInt(options.getOrDefault("port", "6568"));
+        long delay = Long.parseLong(options.getOrDefault("delay", "0"));
+        byte[] data = serverData(options.getOrDefault("name", "hub-" + port),
+                Integer.parseInt(options.getOrDefault("players", "0")),
+                Integer.parseInt(options.getOrDefault("limit", "0")),
+                Integer.parseInt(options.getOrDefault("build", "144")));
+
+        try (DatagramSocket socket = new DatagramSocket(port, InetAddress.getByName("0.0.0.0"))) {
+            System.out.println("Hub stand-in listening on UDP " + port + " with " + delay + " ms delay");
+            byte[] request = new byte[64];
+            while (true) {
+                DatagramPacket packet = new DatagramPacket(request, request.length);
+                socket.receive(packet);
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                socket.send(new DatagramPacket(data, data.length, packet.getSocketAddress()));
+            }
+        }
+    }
+
+    static byte[] serverData(String name, int players, int limit, int build) {
+        ByteBuffer buffer = ByteBuffer.allocate(500);
+        writeString(buffer, name, 100);
+        writeString(buffer, "stand-in", 64); // карта
+        buffer.putInt(players);
+        buffer.putInt(0); // волна
+        buffer.putInt(build);
+        writeString(buffer, "official", 32);
+        buffer.put((byte) 0); // survival
+        buffer.putInt(limit);
+        writeString(buffer, "", 100); // описание
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static void writeString(ByteBuffer buffer, String string, int maxLength) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxLength) {
+            bytes = Arrays.copyOf(bytes, maxLength);
+        }
+        buffer.put((byte) bytes.length);
+        buffer.put(bytes);
+    }
+}
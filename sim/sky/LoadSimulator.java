@@ -0,0 +1,399 @@
+package sky;
+
+import arc.ApplicationListener;
+import arc.Core;
+import arc.Events;
+import arc.files.Fi;
+import arc.math.Mathf;
+import arc.math.Rand;
+import arc.struct.LongSeq;
+import arc.struct.ObjectMap;
+import arc.struct.Seq;
+import arc.util.Log;
+import arc.util.Reflect;
+import arc.util.Strings;
+import arc.util.Time;
+import mindustry.Vars;
+import mindustry.core.NetClient;
+import mindustry.core.NetServer;
+import mindustry.game.EventType;
+import mindustry.game.Gamemode;
+import mindustry.gen.Groups;
+import mindustry.gen.Player;
+import mindustry.gen.Unit;
+import mindustry.maps.Map;
+import mindustry.net.Administration;
+import mindustry.server.ServerLauncher;
+import mindustry.world.Tile;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Нагрузочный прогон плагина на headless сервере без сети.
+ * <p>
+ * Поднимает {@link ServerLauncher}, подменяет {@link Vars#net} на {@link SimNet}, хостит карту и подключает
+ * фейковых игроков волной за {@code join} секунд: подключение, загрузка мира, ввод кода, движение, чат и выход.
+ * Доля {@code bots} код никогда не вводит и дожидается кика по таймауту авторизации.
+ * Отчёт текстовый и с фиксированным порядком строк, чтобы сравнивать сборки через diff.
+ * <p>
+ * Аргументы {@code key=value}: players, bots, admins, join, duration, timeout, seed, map, out.
+ */
+public class LoadSimulator {
+
+    private final int players, admins, durationMillis, timeoutMillis;
+    private final float bots, joinSeconds;
+    private final long seed;
+    private final String mapName, out;
+
+    private final Rand rand;
+    private final Seq<SimPlayer> scheduled = new Seq<>(), active = new Seq<>();
+
+    private SimNet net;
+    private TickRecorder recorder;
+    private AuthorizationRegistry authorization;
+    private Metrics metrics;
+    private String mapUsed;
+    private long startedAt;
+    private int nextConnect, connected, authorized, kicked, left;
+    private boolean finished;
+
+    LoadSimulator(ObjectMap<String, String> options) {
+        players = Strings.parseInt(options.get("players", "200"), 200);
+        bots = Strings.parseFloat(options.get("bots", "0.5"), 0.5f);
+        admins = Strings.parseInt(options.get("admins", "2"), 2);
+        joinSeconds = Strings.parseFloat(options.get("join", "1"), 1f);
+        durationMillis = Strings.parseInt(options.get("duration", "90"), 90) * 1000;
+        timeoutMillis = Strings.parseInt(options.get("timeout", "30"), 30) * 1000;
+        seed = Strings.parseLong(options.get("seed", "1"), 1);
+        mapName = options.get("map", "");
+        out = options.get("out", "report.txt");
+        rand = new Rand(seed);
+    }
+
+    public static void main(String[] args) {
+        ObjectMap<String, String> options = new ObjectMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value argument, got: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        LoadSimulator simulator = new LoadSimulator(options);
+        Events.on(EventType.ServerLoadEvent.class, event -> Core.app.post(simulator::setup));
+        ServerLauncher.main(new String[0]);
+    }
+
+    private void setup() {
+        writeConfig();
+
+        net = new SimNet();
+        Vars.net = net;
+
+        // то же что команда host, но без открытия порта
+        Map map = Vars.maps.all().find(m -> m.name().equalsIgnoreCase(mapName));
+        if (map == null) {
+            map = Vars.maps.all().first();
+        }
+        mapUsed = map.name();
+        Vars.logic.reset();
+        Vars.world.loadMap(map, map.applyRules(Gamemode.survival));
+        Vars.state.rules = map.applyRules(Gamemode.survival);
+        Vars.logic.play();
+        net.host(Vars.port);
+
+        Loader loader = new Loader();
+        loader.init();
+        loader.registerClientCommands(Vars.netServer.clientCommands);
+        authorization = Reflect.get(loader, "authorization");
+        metrics = Reflect.get(loader, "metrics");
+
+        schedulePlayers();
+
+        recorder = new TickRecorder(net);
+        Core.app.addListener(new ApplicationListener() {
+            @Override
+            public void update() {
+                drive();
+            }
+        });
+        Core.app.addListener(new ApplicationListener() {
+            @Override
+            public void update() {
+                recorder.end(Groups.player.size(), authorization.size());
+            }
+        });
+
+        startedAt = Time.millis();
+        recorder.start();
+        Log.info("Simulating @ players (@% bots) on @ for @ s", players, (int) (bots * 100), mapUsed, durationMillis / 1000);
+    }
+
+    /** Все фоновые задачи плагина включены, таймаут авторизации укорочен чтобы кики ботов попали в прогон. */
+    private void writeConfig() {
+        Config config = new Config();
+        config.authorization.enabled = true;
+        config.authorization.timeoutMillis = timeoutMillis;
+        config.dynamicDays.enabled = true;
+        config.updateDesc.enabled = true;
+        config.updateChat.enabled = true;
+        config.advertisingBanner.enabled = true;
+
+        Config.Tips tips = new Config.Tips();
+        tips.enabled = true;
+        tips.tipsShowInterval = 10000;
+        tips.tips = List.of("[accent]Онлайн: %online%", "[accent]Волна %wave% на карте %map%", "[accent]Сервер работает %uptime%");
+
+        try {
+            var mapper = new ConfigWatcher(Vars.dataDirectory).mapper().writerWithDefaultPrettyPrinter();
+            Vars.dataDirectory.child(ConfigWatcher.configFileName).writeString(mapper.writeValueAsString(config));
+            Vars.dataDirectory.child(ConfigWatcher.tipsFileName).writeString(mapper.writeValueAsString(tips));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void schedulePlayers() {
+        for (int i = 0; i < players; i++) {
+            SimPlayer sp = new SimPlayer(i, i < admins, i >= admins && rand.chance(bots));
+            sp.connectAt = (long) (rand.random(joinSeconds) * 1000);
+            sp.confirmAt = sp.connectAt + rand.random(1000, 3000); // загрузка мира клиентом
+            sp.codeAt = sp.bot || sp.admin ? Long.MAX_VALUE : sp.confirmAt + rand.random(3000, 15000);
+            sp.leaveAt = !sp.bot && rand.chance(0.3) ? sp.confirmAt + rand.random(20000, durationMillis) : Long.MAX_VALUE;
+            sp.nextChat = sp.confirmAt + rand.random(2000, 20000);
+            sp.nextAction = sp.confirmAt + rand.random(1000);
+            scheduled.add(sp);
+        }
+        scheduled.sort(sp -> sp.connectAt);
+    }
+
+    private void drive() {
+        if (finished) {
+            return;
+        }
+
+        long now = Time.timeSinceMillis(startedAt);
+        if (now >= durationMillis) {
+            finish();
+            return;
+        }
+
+        while (nextConnect < scheduled.size && scheduled.get(nextConnect).connectAt <= now) {
+            connect(scheduled.get(nextConnect++));
+        }
+
+        for (int i = active.size - 1; i >= 0; i--) {
+            SimPlayer sp = active.get(i);
+            if (!sp.con.isConnected()) {
+                if (!sp.left) {
+                    kicked++;
+                }
+                active.remove(i);
+                continue;
+            }
+
+            if (!sp.confirmed) {
+                if (now >= sp.confirmAt) {
+                    NetServer.connectConfirm(sp.player);
+                    sp.confirmed = true;
+                    if (sp.admin) {
+                        NetClient.sendChatMessage(sp.player, "/effect fire");
+                    }
+                }
+                continue;
+            }
+
+            if (now >= sp.leaveAt) {
+                sp.left = true;
+                left++;
+                sp.con.close();
+                continue;
+            }
+
+            if (now >= sp.codeAt) {
+                var entry = authorization.get(sp.player);
+                NetClient.sendChatMessage(sp.player, "/cch " + (entry == null ? 0 : entry.code));
+                sp.codeAt = Long.MAX_VALUE;
+                authorized++;
+            }
+
+            move(sp);
+
+            if (now >= sp.nextChat) {
+                NetClient.sendChatMessage(sp.player, "hello from " + sp.player.name);
+                sp.nextChat = now + rand.random(5000, 20000);
+            }
+
+            if (now >= sp.nextAction) {
+                Tile tile = Vars.world.tileWorld(sp.player.x, sp.player.y);
+                if (tile != null) {
+                    Vars.netServer.admins.allowAction(sp.player, Administration.ActionType.configure, tile, action -> {});
+                }
+                sp.nextAction = now + 1000;
+            }
+        }
+    }
+
+    /** Повторяет обработчик ConnectPacket из {@link NetServer}, кроме отправки мира. */
+    private void connect(SimPlayer sp) {
+        String uuid = String.format(Locale.ROOT, "sim%07dAA==", sp.index), usid = "usid" + sp.index;
+        SimNet.SimConnection con = net.connect("10.1." + (sp.index >> 8 & 0xff) + "." + (sp.index & 0xff), uuid, usid);
+        Player player = Player.create();
+        player.name = (sp.bot ? "bot" : "player") + sp.index;
+        player.locale = sp.index % 3 == 0 ? "en" : "ru";
+
+        Vars.netServer.admins.updatePlayerJoined(uuid, con.address, player.name);
+        if (sp.admin) {
+            Vars.netServer.admins.adminPlayer(uuid, usid);
+        }
+        player.admin = Vars.netServer.admins.isAdmin(uuid, usid);
+        player.con = con;
+        con.player = player;
+        player.team(Vars.netServer.assignTeam(player));
+
+        sp.player = player;
+        sp.con = con;
+        active.add(sp);
+        connected++;
+        Events.fire(new EventType.PlayerConnect(player));
+    }
+
+    private void move(SimPlayer sp) {
+        if (sp.player.dead()) {
+            return;
+        }
+
+        if (rand.chance(0.02) || (sp.dx == 0 && sp.dy == 0)) {
+            float angle = rand.random(360f);
+            sp.dx = Mathf.cosDeg(angle) * 2f;
+            sp.dy = Mathf.sinDeg(angle) * 2f;
+        }
+
+        Unit unit = sp.player.unit();
+        unit.vel.set(sp.dx, sp.dy);
+        unit.set(Mathf.clamp(unit.x + sp.dx, 0, Vars.world.unitWidth()), Mathf.clamp(unit.y + sp.dy, 0, Vars.world.unitHeight()));
+    }
+
+    private void finish() {
+        finished = true;
+        Fi file = new Fi(out);
+        file.writeString(report());
+        Log.info("Simulation report written to @", file.absolutePath());
+        System.exit(0);
+    }
+
+    private String report() {
+        StringBuilder out = new StringBuilder(8192);
+        out.append("# rcr-plugin load simulation\n\n[parameters]\n");
+        row(out, "players", players);
+        row(out, "bots", format("%.2f", bots));
+        row(out, "admins", admins);
+        row(out, "join_s", format("%.1f", joinSeconds));
+        row(out, "duration_s", durationMillis / 1000);
+        row(out, "auth_timeout_s", timeoutMillis / 1000);
+        row(out, "seed", seed);
+        row(out, "map", mapUsed);
+        row(out, "java", System.getProperty("java.version"));
+
+        out.append("\n[outcome]\n");
+        row(out, "connected", connected);
+        row(out, "authorized", authorized);
+        row(out, "kicked", kicked);
+        row(out, "left", left);
+        row(out, "online_at_end", Groups.player.size());
+        row(out, "pending_at_end", authorization.size());
+
+        var ticks = recorder.tickNanos;
+        out.append("\n[ticks]\n");
+        row(out, "frames", ticks.size);
+        row(out, "tick_ms", format("p50=%.3f p90=%.3f p99=%.3f p999=%.3f max=%.3f",
+                ms(TickRecorder.percentile(ticks, 0.5)), ms(TickRecorder.percentile(ticks, 0.9)),
+                ms(TickRecorder.percentile(ticks, 0.99)), ms(TickRecorder.percentile(ticks, 0.999)),
+                ms(TickRecorder.percentile(ticks, 1))));
+        row(out, "frames_over_16ms", countOver(ticks, 16_666_667L));
+        row(out, "frames_over_50ms", countOver(ticks, 50_000_000L));
+        row(out, "alloc_kb_per_tick", format("avg=%.1f p99=%.1f max=%.1f",
+                ticks.size == 0 ? 0 : sum(recorder.allocBytes) / 1024d / ticks.size,
+                TickRecorder.percentile(recorder.allocBytes, 0.99) / 1024d,
+                TickRecorder.percentile(recorder.allocBytes, 1) / 1024d));
+        row(out, "packets_per_tick", format("avg=%.1f max=%d",
+                ticks.size == 0 ? 0 : (double) sum(recorder.packets) / ticks.size, TickRecorder.percentile(recorder.packets, 1)));
+
+        out.append("\n[packets]\n");
+        var packetNames = net.packets.keys().toArray();
+        packetNames.sort();
+        for (String name : packetNames) {
+            row(out, name, net.packets.get(name));
+        }
+
+        out.append("\n[hooks]\n");
+        out.append(pad("hook", 28)).append(pad("calls", 10)).append(pad("avg_us", 10))
+                .append(pad("p50_us", 10)).append(pad("p99_us", 10)).append("max_us\n");
+        for (Metrics.Probe probe : metrics.probes()) {
+            long count = probe.count.sum();
+            if (count == 0) {
+                continue;
+            }
+            out.append(pad(probe.name, 28)).append(pad(String.valueOf(count), 10))
+                    .append(pad(String.valueOf(probe.totalNanos.sum() / count / 1000), 10))
+                    .append(pad("<=" + probe.percentileMicros(0.5), 10)).append(pad("<=" + probe.percentileMicros(0.99), 10))
+                    .append(probe.maxNanos.get() / 1000).append('\n');
+        }
+
+        out.append("\n[timeline]\n");
+        out.append(pad("sec", 6)).append(pad("online", 8)).append(pad("pending", 9)).append(pad("ticks", 7))
+                .append(pad("max_ms", 10)).append(pad("alloc_mb", 10)).append("packets\n");
+        for (int i = 0; i < recorder.timeline.size; i++) {
+            var second = recorder.timeline.get(i);
+            out.append(pad(String.valueOf(i), 6)).append(pad(String.valueOf(second.online), 8))
+                    .append(pad(String.valueOf(second.pending), 9)).append(pad(String.valueOf(second.ticks), 7))
+                    .append(pad(format("%.3f", ms(second.maxTickNanos)), 10))
+                    .append(pad(format("%.2f", second.allocBytes / 1048576d), 10)).append(second.packets).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static long countOver(LongSeq values, long threshold) {
+        return Arrays.stream(values.items, 0, values.size).filter(v -> v > threshold).count();
+    }
+
+    private static long sum(LongSeq values) {
+        return Arrays.stream(values.items, 0, values.size).sum();
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1_000_000d;
+    }
+
+    private static String format(String format, Object... args) {
+        return String.format(Locale.ROOT, format, args);
+    }
+
+    private static void row(StringBuilder out, String key, Object value) {
+        out.append(pad(key, 28)).append(value).append('\n');
+    }
+
+    private static String pad(String text, int width) {
+        return text.length() >= width ? text : text + " ".repeat(width - text.length());
+    }
+
+    static class SimPlayer {
+        final int index;
+        final boolean admin, bot;
+
+        long connectAt, confirmAt, codeAt, leaveAt, nextChat, nextAction;
+        Player player;
+        SimNet.SimConnection con;
+        boolean confirmed, left;
+        float dx, dy;
+
+        SimPlayer(int index, boolean admin, boolean bot) {
+            this.index = index;
+            this.admin = admin;
+            this.bot = bot;
+        }
+    }
+}
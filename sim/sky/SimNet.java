@@ -0,0 +1,105 @@
+package sky;
+
+import arc.Core;
+import arc.struct.ObjectIntMap;
+import arc.struct.Seq;
+import arc.util.Reflect;
+import mindustry.core.NetServer;
+import mindustry.net.Net;
+import mindustry.net.NetConnection;
+
+/**
+ * Сеть сервера без сокетов: широковещательные вызовы доходят до фейковых соединений,
+ * а каждое соединение только считает отправленные пакеты по типам.
+ */
+class SimNet extends Net {
+
+    final Seq<SimConnection> connections = new Seq<>();
+    final ObjectIntMap<String> packets = new ObjectIntMap<>();
+    long sent;
+
+    SimNet() {
+        super(null);
+    }
+
+    @Override
+    public void host(int port) {
+        // то же что делает Net#host, но без провайдера
+        Reflect.set(Net.class, this, "server", true);
+        Reflect.set(Net.class, this, "active", true);
+    }
+
+    @Override
+    public void closeServer() {
+        for (SimConnection con : connections.copy()) {
+            con.close();
+        }
+    }
+
+    @Override
+    public Iterable<SimConnection> getConnections() {
+        return connections;
+    }
+
+    @Override
+    public void send(Object object, boolean reliable) {
+        for (int i = 0; i < connections.size; i++) {
+            connections.get(i).send(object, reliable);
+        }
+    }
+
+    @Override
+    public void sendExcept(NetConnection except, Object object, boolean reliable) {
+        for (int i = 0; i < connections.size; i++) {
+            SimConnection con = connections.get(i);
+            if (con != except) {
+                con.send(object, reliable);
+            }
+        }
+    }
+
+    SimConnection connect(String address, String uuid, String usid) {
+        SimConnection con = new SimConnection(address);
+        con.uuid = uuid;
+        con.usid = usid;
+        connections.add(con);
+        return con;
+    }
+
+    class SimConnection extends NetConnection {
+        private boolean closed;
+
+        SimConnection(String address) {
+            super(address);
+        }
+
+        @Override
+        public void send(Object object, boolean reliable) {
+            if (closed) {
+                return;
+            }
+
+            packets.increment(object.getClass().getSimpleName());
+            sent++;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return !closed;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            connections.remove(this, true);
+            // как и настоящий провайдер, отключение обрабатывается в начале следующего кадра
+            if (player != null) {
+                Core.app.post(() -> NetServer.onDisconnect(player, "disconnected"));
+            }
+        }
+    }
+}
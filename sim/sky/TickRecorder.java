@@ -0,0 +1,87 @@
+package sky;
+
+import arc.Core;
+import arc.struct.LongSeq;
+import arc.struct.Seq;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Время и аллокации игрового потока за кадр.
+ * <p>
+ * Кадр начинается с маркера, который отложен через {@link Core#app} в конце предыдущего кадра,
+ * поэтому в замер попадают задачи {@code Timer} и обработка отключений, а сон между кадрами нет.
+ */
+class TickRecorder {
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final SimNet net;
+
+    final LongSeq tickNanos = new LongSeq(), allocBytes = new LongSeq(), packets = new LongSeq();
+    final Seq<Second> timeline = new Seq<>();
+
+    private long startedAt, frameStart, frameAlloc, framePackets;
+    private boolean inFrame;
+
+    TickRecorder(SimNet net) {
+        this.net = net;
+    }
+
+    void start() {
+        startedAt = System.nanoTime();
+        Core.app.post(this::begin);
+    }
+
+    private void begin() {
+        inFrame = true;
+        frameAlloc = threads.getCurrentThreadAllocatedBytes();
+        framePackets = net.sent;
+        frameStart = System.nanoTime();
+    }
+
+    /** Последний слушатель кадра. */
+    void end(int online, int pending) {
+        if (!inFrame) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long tick = now - frameStart;
+        long alloc = threads.getCurrentThreadAllocatedBytes() - frameAlloc;
+        long sent = net.sent - framePackets;
+        tickNanos.add(tick);
+        allocBytes.add(alloc);
+        packets.add(sent);
+
+        int second = (int) ((frameStart - startedAt) / 1_000_000_000L);
+        while (timeline.size <= second) {
+            timeline.add(new Second());
+        }
+        Second s = timeline.get(second);
+        s.ticks++;
+        s.maxTickNanos = Math.max(s.maxTickNanos, tick);
+        s.allocBytes += alloc;
+        s.packets += sent;
+        s.online = online;
+        s.pending = pending;
+
+        inFrame = false;
+        Core.app.post(this::begin);
+    }
+
+    static long percentile(LongSeq values, double p) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(values.items, values.size);
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    static class Second {
+        int ticks, online, pending;
+        long maxTickNanos, allocBytes, packets;
+    }
+}
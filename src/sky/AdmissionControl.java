@@ -0,0 +1,178 @@
+package sky;
+
+import arc.math.Mathf;
+import mindustry.net.NetConnection;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Допуск подключений к капче до того, как на игрока будет заведена {@link AuthorizationRegistry.AuthorizeEntry}.
+ * <p>
+ * Ведро токенов на IP и на подсеть /24 (для IPv6 на /64) и общий предел ожидающих капчу.
+ * Ведра хранятся в таблицах фиксированного размера с открытой адресацией по int ключу, поэтому память
+ * не растёт под атакой: при переполнении окна пробирования вытесняется самая давно обновлённая запись,
+ * а ведро, которое успело наполниться целиком, считается свободным слотом.
+ */
+class AdmissionControl {
+
+    enum Verdict {admit, ip, subnet, capacity}
+
+    private final Buckets ips, subnets;
+    private final LongAdder[] counters = new LongAdder[Verdict.values().length];
+
+    private Config.Authorization config;
+
+    public AdmissionControl(Config.Authorization config, Metrics metrics) {
+        this.config = config;
+        this.ips = new Buckets(config.admissionTableSize);
+        this.subnets = new Buckets(config.admissionTableSize);
+        for (Verdict verdict : Verdict.values()) {
+            counters[verdict.ordinal()] = metrics.counter("admission." + verdict);
+        }
+    }
+
+    /** Новые пороги применяются сразу, размер таблиц остаётся прежним. */
+    public void setConfig(Config.Authorization config) {
+        this.config = config;
+    }
+
+    public Verdict admit(NetConnection con, int pending, long now) {
+        Verdict verdict = check(con.address, pending, now);
+        counters[verdict.ordinal()].increment();
+        return verdict;
+    }
+
+    private Verdict check(String address, int pending, long now) {
+        if (pending >= config.maxPending) {
+            return Verdict.capacity;
+        }
+
+        int ip = ipv4(address), subnet;
+        if (ip != 0) {
+            subnet = ip >>> 8;
+        } else {
+            ip = address.hashCode();
+            subnet = ipv6Prefix(address);
+        }
+
+        // токен подсети берётся только если IP прошёл, иначе один адрес выжигал бы лимит всей подсети
+        if (!ips.peek(ip, config.ipBurst, config.ipPerMinute, now)) {
+            return Verdict.ip;
+        }
+        if (!subnets.take(subnet, config.subnetBurst, config.subnetPerMinute, now)) {
+            return Verdict.subnet;
+        }
+        ips.take(ip, config.ipBurst, config.ipPerMinute, now);
+        return Verdict.admit;
+    }
+
+    /** Адрес вида {@code a.b.c.d} в int без аллокаций, 0 если это не IPv4. */
+    static int ipv4(String address) {
+        int result = 0, octet = 0, dots = 0, digits = 0;
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = octet * 10 + (c - '0');
+                if (++digits > 3 || octet > 255) {
+                    return 0;
+                }
+            } else if (c == '.' && digits > 0 && dots < 3) {
+                result = result << 8 | octet;
+                octet = digits = 0;
+                dots++;
+            } else {
+                return 0;
+            }
+        }
+        return dots == 3 && digits > 0 ? result << 8 | octet : 0;
+    }
+
+    /** Хеш первых четырёх групп IPv6 адреса. */
+    static int ipv6Prefix(String address) {
+        int hash = 0, groups = 0;
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c == ':' && ++groups == 4) {
+                break;
+            }
+            hash = 31 * hash + c;
+        }
+        return hash;
+    }
+
+    /** Таблица ведер токенов; токены хранятся в тысячных долях. */
+    static class Buckets {
+        private static final int probeLimit = 8;
+
+        private final int[] keys;
+        private final int[] tokens;
+        private final long[] updated;
+        private final boolean[] used;
+        private final int mask;
+
+        Buckets(int size) {
+            int capacity = Mathf.nextPowerOfTwo(Math.max(size, probeLimit));
+            keys = new int[capacity];
+            tokens = new int[capacity];
+            updated = new long[capacity];
+            used = new boolean[capacity];
+            mask = capacity - 1;
+        }
+
+        boolean peek(int key, int burst, float perMinute, long now) {
+            int slot = find(key, burst, perMinute, now);
+            return refill(slot, burst, perMinute, now) >= 1000;
+        }
+
+        boolean take(int key, int burst, float perMinute, long now) {
+            int slot = find(key, burst, perMinute, now);
+            int available = refill(slot, burst, perMinute, now);
+            if (available < 1000) {
+                return false;
+            }
+            tokens[slot] = available - 1000;
+            updated[slot] = now;
+            return true;
+        }
+
+        private int refill(int slot, int burst, float perMinute, long now) {
+            long gained = (long) ((now - updated[slot]) * perMinute / 60f);
+            return (int) Math.min((long) burst * 1000, tokens[slot] + gained);
+        }
+
+        private int find(int key, int burst, float perMinute, long now) {
+            long fullAfter = (long) (burst * 60000L / perMinute);
+            int start = mix(key) & mask, free = -1, oldest = start;
+            for (int i = 0; i < probeLimit; i++) {
+                int slot = (start + i) & mask;
+                if (!used[slot]) {
+                    if (free < 0) {
+                        free = slot;
+                    }
+                    break;
+                }
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                if (free < 0 && now - updated[slot] >= fullAfter) {
+                    free = slot; // ведро наполнилось, запись ничем не отличается от новой
+                }
+                if (updated[slot] < updated[oldest]) {
+                    oldest = slot;
+                }
+            }
+
+            int slot = free >= 0 ? free : oldest;
+            used[slot] = true;
+            keys[slot] = key;
+            tokens[slot] = burst * 1000;
+            updated[slot] = now;
+            return slot;
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package sky;
+
+import arc.util.Log;
+import mindustry.gen.Player;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Журнал событий безопасности: капча, кики, переходы в лобби, команды админов.
+ * <p>
+ * Игровой поток только кладёт событие в неблокирующую очередь и будит писателя, поэтому медленный диск
+ * не останавливает тик; при переполнении {@link Config.Audit#queueLimit} события отбрасываются и считаются
+ * в {@code audit.dropped}. Писатель дописывает записи пачкой в файл {@code audit-<время>.log}: длина записи,
+ * время, тип и строки с длиной впереди. {@code force} вызывается не чаще {@link Config.Audit#syncIntervalMillis},
+ * файл сменяется по размеру или возрасту, старые удаляются сверх {@link Config.Audit#maxFiles}.
+ * Оборванная последняя запись при чтении пропускается.
+ */
+class AuditLog {
+
+    enum Kind {
+        captchaIssued, captchaPassed, captchaFailed, captchaTimeout, trusted, rejected,
+        kick, hub, js, jsq, effect, shared
+    }
+
+    record Event(long time, Kind kind, String uuid, String address, String name, String detail) {}
+
+    static final String prefix = "audit-", extension = ".log";
+
+    private static final DateTimeFormatter fileTime = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter printTime = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final int maxString = 1024; // /js может быть длинным
+
+    private final ConcurrentLinkedQueue<Event> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ExecutorService queries = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "rcr-audit-query");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Path directory;
+    private final LongAdder written, dropped;
+    private final Thread writer;
+
+    private volatile Config.Audit config;
+    // поля ниже только у писателя
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(64 * 1024);
+    private FileChannel channel;
+    private long openedAt, lastSync;
+    private boolean dirty;
+
+    public AuditLog(Path directory, Config.Audit config, Metrics metrics) {
+        this.directory = directory;
+        this.config = config;
+        this.written = metrics.counter("audit.written");
+        this.dropped = metrics.counter("audit.dropped");
+        this.writer = new Thread(this::run, "rcr-audit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Размеры, ротация и интервал синхронизации применяются сразу. */
+    public void setConfig(Config.Audit config) {
+        this.config = config;
+    }
+
+    public void record(Kind kind, Player player, String detail) {
+        record(kind, player.uuid(), player.con == null ? "" : player.con.address, player.plainName(), detail);
+    }
+
+    /** Не блокирует; вызывается из любого потока. */
+    public void record(Kind kind, String uuid, String address, String name, String detail) {
+        if (!config.enabled) {
+            return;
+        }
+        if (queued.incrementAndGet() > config.queueLimit) {
+            queued.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        queue.offer(new Event(System.currentTimeMillis(), kind, uuid, address, name, detail));
+        LockSupport.unpark(writer);
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                drain();
+            } catch (Throwable t) {
+                Log.err("Audit log write failed, retrying with a new file");
+                Log.err(t);
+                batch.clear(); // пачка могла уйти частично, повтор дал бы оборванную запись посреди файла
+                close();
+            }
+            LockSupport.parkNanos(config.syncIntervalMillis * 1_000_000L);
+        }
+    }
+
+    private void drain() throws IOException {
+        Event event;
+        while ((event = queue.poll()) != null) {
+            queued.decrementAndGet();
+            if (!encode(event)) {
+                flush();
+                if (!encode(event)) { // запись больше буфера невозможна из-за maxString, но на всякий случай
+                    dropped.increment();
+                }
+            }
+        }
+        flush();
+
+        long now = System.currentTimeMillis();
+        if (dirty && now - lastSync >= config.syncIntervalMillis) {
+            channel.force(false);
+            dirty = false;
+            lastSync = now;
+        }
+    }
+
+    private boolean encode(Event event) {
+        int start = batch.position();
+        try {
+            batch.putInt(0); // длина, заполняется ниже
+            batch.putLong(event.time());
+            batch.put((byte) event.kind().ordinal());
+            putString(event.uuid());
+            putString(event.address());
+            putString(event.name());
+            putString(event.detail());
+            batch.putInt(start, batch.position() - start - 4);
+            return true;
+        } catch (BufferOverflowException e) {
+            batch.position(start);
+            return false;
+        }
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, maxString);
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--; // не рвём многобайтовый символ
+        }
+        batch.putShort((short) length);
+        batch.put(bytes, 0, length);
+    }
+
+    private void flush() throws IOException {
+        if (batch.position() == 0) {
+            return;
+        }
+
+        rotate();
+        batch.flip();
+        int records = 0;
+        for (int i = 0; i < batch.limit(); i += 4 + batch.getInt(i)) {
+            records++;
+        }
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        batch.clear();
+        written.add(records);
+        dirty = true;
+    }
+
+    private void rotate() throws IOException {
+        long now = System.currentTimeMillis();
+        if (channel != null && channel.size() < config.maxFileBytes && now - openedAt < config.rotateMillis) {
+            return;
+        }
+
+        close();
+        Files.createDirectories(directory);
+        Path file;
+        long name = now;
+        do { // при ротации быстрее миллисекунды имя уже занято
+            file = directory.resolve(prefix + fileTime.format(Instant.ofEpochMilli(name++)) + extension);
+        } while (Files.exists(file));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        openedAt = now;
+
+        List<Path> files = files();
+        for (int i = 0; i < files.size() - config.maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    private void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (dirty) {
+                channel.force(false);
+            }
+            channel.close();
+        } catch (IOException e) {
+            Log.err(e);
+        }
+        channel = null;
+        dirty = false;
+    }
+
+    /** Файлы журнала от старых к новым; имя содержит время, поэтому достаточно сортировки по имени. */
+    private List<Path> files() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + extension)) {
+                stream.forEach(files::add);
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /** Последние {@code limit} событий игрока в консоль; читает диск в своём потоке. */
+    public void query(String uuid, int limit) {
+        queries.execute(() -> {
+            try {
+                List<Event> found = new ArrayList<>();
+                List<Path> files = files();
+                // с новых файлов к старым, пока не наберётся limit
+                for (int i = files.size() - 1; i >= 0 && found.size() < limit; i--) {
+                    List<Event> inFile = new ArrayList<>();
+                    read(files.get(i), uuid, inFile);
+                    found.addAll(0, inFile.subList(Math.max(0, inFile.size() - (limit - found.size())), inFile.size()));
+                }
+
+                if (found.isEmpty()) {
+                    Log.info("No audit events for @", uuid);
+                }
+                for (Event event : found) {
+                    Log.info("@ @ @ @ (@) @", printTime.format(Instant.ofEpochMilli(event.time())), event.kind(),
+                            event.name(), event.uuid(), event.address(), event.detail());
+                }
+            } catch (IOException e) {
+                Log.err("Unable to read audit log");
+                Log.err(e);
+            }
+        });
+    }
+
+    private static void read(Path file, String uuid, List<Event> out) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        while (in.remaining() >= 4) {
+            int length = in.getInt();
+            if (length < 0 || length > in.remaining()) {
+                break; // запись оборвана падением
+            }
+
+            int next = in.position() + length;
+            long time = in.getLong();
+            int kind = in.get();
+            String recordUuid = getString(in);
+            if (recordUuid.equals(uuid) && kind >= 0 && kind < Kind.values().length) {
+                out.add(new Event(time, Kind.values()[kind], recordUuid, getString(in), getString(in), getString(in)));
+            }
+            in.position(next);
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort();
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+}
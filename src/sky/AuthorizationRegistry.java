@@ -0,0 +1,85 @@
+package sky;
+
+import arc.util.Nullable;
+import mindustry.gen.Player;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реестр игроков, ожидающих прохождения капчи.
+ * <p>
+ * Ключом служит uuid игрока, у строк хеш кешируется, поэтому проверки в action/chat фильтрах
+ * выполняются за O(1) без перебора всех ожидающих. Чтение безопасно из любого потока.
+ */
+class AuthorizationRegistry {
+
+    private final ConcurrentHashMap<String, AuthorizeEntry> entries = new ConcurrentHashMap<>();
+
+    public AuthorizeEntry add(Player player, int code) {
+        AuthorizeEntry entry = new AuthorizeEntry(player, code);
+        entries.put(entry.uuid, entry);
+        return entry;
+    }
+
+    @Nullable
+    public AuthorizeEntry get(Player player) {
+        return entries.isEmpty() ? null : entries.get(player.uuid());
+    }
+
+    public boolean contains(Player player) {
+        return !entries.isEmpty() && entries.containsKey(player.uuid());
+    }
+
+    public boolean contains(AuthorizeEntry entry) {
+        return entries.get(entry.uuid) == entry;
+    }
+
+    @Nullable
+    public AuthorizeEntry remove(Player player) {
+        AuthorizeEntry entry = entries.remove(player.uuid());
+        if (entry != null) {
+            entry.cancelDeadlines();
+        }
+        return entry;
+    }
+
+    public boolean remove(AuthorizeEntry entry) {
+        if (entries.remove(entry.uuid, entry)) {
+            entry.cancelDeadlines();
+            return true;
+        }
+        return false;
+    }
+
+    public Iterable<AuthorizeEntry> entries() {
+        return entries.values();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    static class AuthorizeEntry {
+        public final String uuid;
+        public final Player player;
+        public final int code;
+
+        @Nullable
+        public DeadlineWheel.Deadline reminder, kick;
+
+        public AuthorizeEntry(Player player, int code) {
+            this.uuid = player.uuid();
+            this.player = player;
+            this.code = code;
+        }
+
+        void cancelDeadlines() {
+            if (reminder != null) {
+                reminder.cancel();
+            }
+            if (kick != null) {
+                kick.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package sky;
+
+import arc.struct.IntMap;
+import arc.struct.Seq;
+import arc.util.Time;
+import arc.util.Timer;
+import mindustry.gen.Player;
+import mindustry.net.Packet;
+
+import java.util.List;
+
+/**
+ * Показ банеров в режиме {@link Config.Mode#queue}.
+ * <p>
+ * Вместо таймера на каждого игрока игроки группируются в когорты по фазе ротации.
+ * Когорт столько же, сколько банеров, и у каждой один таймер, который показывает банер
+ * сразу всем её участникам. Пустая когорта перестаёт перепланироваться.
+ * <p>
+ * Каждая когорта крутит банеры с первого, когорты различаются только временем запуска, поэтому игрок,
+ * как и раньше, видит банеры по порядку с первого. Если все когорты заняты и ни одна не начинает ротацию
+ * заново, игрок ждёт в ближайшей к началу ротации.
+ */
+class BannerScheduler {
+
+    /** Задержка перед первым банером, чтобы игрок успел загрузить мир. */
+    static final long joinDelayMillis = 3000;
+    /** Через сколько повторить показ, отложенный {@link TickBudget}. */
+    static final long deferMillis = 1000;
+
+    private final List<Config.Banner> banners;
+    private final Packet[] packets;
+    private final Metrics.Probe probe;
+    private final TickBudget budget;
+    private final OutboundPacer pacer;
+    private final Cohort[] cohorts;
+    private final IntMap<Cohort> members = new IntMap<>();
+
+    public BannerScheduler(List<Config.Banner> banners, Packet[] packets, Metrics.Probe probe, TickBudget budget,
+                           OutboundPacer pacer) {
+        this.banners = banners;
+        this.packets = packets;
+        this.probe = probe;
+        this.budget = budget;
+        this.pacer = pacer;
+        this.cohorts = new Cohort[banners.size()];
+        for (int i = 0; i < cohorts.length; i++) {
+            cohorts[i] = new Cohort();
+        }
+    }
+
+    public void join(Player player) {
+        if (cohorts.length == 0) {
+            return;
+        }
+
+        leave(player);
+
+        long now = Time.millis();
+        Cohort target = null;
+        for (Cohort cohort : cohorts) {
+            if (!cohort.running) {
+                continue;
+            }
+
+            // ближайшая когорта, которая следующим покажет первый банер не раньше задержки входа
+            if (cohort.idx == 0 && cohort.nextFireTime - now >= joinDelayMillis &&
+                    (target == null || cohort.nextFireTime < target.nextFireTime)) {
+                target = cohort;
+            }
+        }
+
+        if (target == null) {
+            for (Cohort cohort : cohorts) {
+                if (!cohort.running) {
+                    target = cohort;
+                    target.start(joinDelayMillis);
+                    break;
+                }
+            }
+        }
+
+        if (target == null) { // все когорты в середине ротации, ждём начала ближайшей
+            for (Cohort cohort : cohorts) {
+                if (target == null || cohort.untilRotation(now) < target.untilRotation(now)) {
+                    target = cohort;
+                }
+            }
+            target.waiting.add(player);
+        } else {
+            target.players.add(player);
+        }
+        members.put(player.id, target);
+    }
+
+    public void leave(Player player) {
+        Cohort cohort = members.remove(player.id);
+        if (cohort != null) {
+            cohort.players.remove(player, true);
+            cohort.waiting.remove(player, true);
+        }
+    }
+
+    public void cancel() {
+        for (Cohort cohort : cohorts) {
+            cohort.cancel();
+            cohort.running = false;
+            cohort.players.clear();
+            cohort.waiting.clear();
+        }
+        members.clear();
+    }
+
+    class Cohort extends Timer.Task {
+        public final Seq<Player> players = new Seq<>(false, 16);
+        public final Seq<Player> waiting = new Seq<>(false, 4); // добавятся к players на первом банере
+
+        public int idx; // следующий банер
+        public boolean running;
+        public long nextFireTime;
+
+        void start(long delayMillis) {
+            if (!running) {
+                idx = 0;
+            }
+            running = true;
+            nextFireTime = Time.millis() + delayMillis;
+            Timer.schedule(this, delayMillis / 1000f);
+        }
+
+        /** Через сколько когорта снова покажет первый банер. */
+        long untilRotation(long now) {
+            long until = nextFireTime - now;
+            for (int i = idx; i > 0 && i < banners.size(); i++) {
+                until += banners.get(i).timeLife * 1000L;
+            }
+            return until;
+        }
+
+        @Override
+        public void run() {
+            if (players.isEmpty() && waiting.isEmpty()) {
+                running = false;
+                return;
+            }
+
+            if (!budget.admit(TickBudget.Priority.low)) { // тот же банер чуть позже
+                start(deferMillis);
+                return;
+            }
+
+            long start = System.nanoTime();
+            if (idx >= banners.size()) {
+                idx = 0;
+            }
+            if (idx == 0 && !waiting.isEmpty()) {
+                players.addAll(waiting);
+                waiting.clear();
+            }
+
+            Config.Banner b = banners.get(idx);
+            Packet packet = packets[idx];
+            idx = (idx + 1) % banners.size();
+            // банер, задержанный дольше своей жизни, уже не нужен
+            long now = Time.millis(), maxDelay = Math.max(b.timeLife * 1000L, 1000L);
+            for (int i = 0; i < players.size; i++) {
+                pacer.send(players.get(i), "banner", packet, now, maxDelay);
+            }
+
+            nextFireTime = Time.millis() + b.timeLife * 1000;
+            Timer.schedule(this, b.timeLife);
+            probe.record(start);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package sky;
+
+import arc.struct.ObjectIntMap;
+import arc.util.Log;
+import arc.util.Reflect;
+import arc.util.io.Writes;
+import mindustry.Vars;
+import mindustry.gen.InfoPopupCallPacket;
+import mindustry.gen.LabelCallPacket;
+import mindustry.gen.SendMessageCallPacket;
+import mindustry.net.Net;
+import mindustry.net.NetConnection;
+import mindustry.net.Packet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+
+/**
+ * Заранее сериализованные пакеты для рассылок, которые не меняются между отправками:
+ * реклама в чате и банеры. Подсказки читаются из {@link TipStore} при показе.
+ * <p>
+ * Тело пакета кодируется один раз при загрузке конфигурации, а при отправке каждому соединению
+ * копируются готовые байты. Пересобирается только через {@link #rebuild(Config, Placeholders)}.
+ */
+class BroadcastCache {
+
+    private static boolean registered, attempted;
+
+    public Broadcast chat;
+    public Packet[] queueBanners = {}, allBanners = {};
+
+    public void rebuild(Config config, Placeholders placeholders) {
+        chat = new Broadcast(placeholders.compile(config.updateChat.chat));
+
+        List<Config.Banner> banners = config.advertisingBanner.banners;
+        Packet[] queue = new Packet[banners.size()], all = new Packet[banners.size()];
+        for (int i = 0; i < banners.size(); i++) {
+            Config.Banner b = banners.get(i);
+            queue[i] = banner(b, b.timeLife);
+            all[i] = banner(b, b.timeLife == -1 ? Float.MAX_VALUE : b.timeLife);
+        }
+        queueBanners = queue;
+        allBanners = all;
+    }
+
+    public static void broadcast(Packet packet) {
+        Vars.net.send(packet, true);
+    }
+
+    public static void send(NetConnection con, Packet packet) {
+        con.send(packet, true);
+    }
+
+    static Packet message(String text) {
+        var packet = new SendMessageCallPacket();
+        packet.message = text;
+        return prepare(packet);
+    }
+
+    static Packet banner(Config.Banner banner, float duration) {
+        if (banner instanceof Config.WorldBanner w) {
+            var packet = new LabelCallPacket();
+            packet.message = w.text;
+            packet.duration = duration;
+            packet.worldx = w.x * Vars.tilesize;
+            packet.worldy = w.y * Vars.tilesize;
+            return prepare(packet);
+        } else if (banner instanceof Config.ScreenBanner s) {
+            var packet = new InfoPopupCallPacket();
+            packet.message = s.text;
+            packet.duration = duration;
+            packet.align = s.align;
+            packet.top = s.top;
+            packet.left = s.left;
+            packet.bottom = s.bottom;
+            packet.right = s.right;
+            return prepare(packet);
+        } else {
+            throw new IllegalStateException();
+        }
+    }
+
+    /** Без зарегистрированных id пакет возвращается как есть и кодируется обычным путём, для каждого соединения. */
+    private static Packet prepare(Packet packet) {
+        if (!register()) {
+            return packet;
+        }
+        if (packet instanceof SendMessageCallPacket) {
+            return new PreparedMessage(packet);
+        } else if (packet instanceof LabelCallPacket) {
+            return new PreparedLabel(packet);
+        } else if (packet instanceof InfoPopupCallPacket) {
+            return new PreparedInfoPopup(packet);
+        } else {
+            throw new IllegalArgumentException("No prepared packet for " + packet.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Сеть определяет id пакета по его классу, поэтому классам готовых пакетов выдаются id исходных Call-пакетов:
+     * клиент получает ровно те же байты, что и от {@code Call.sendMessage}/{@code label}/{@code infoPopup}.
+     * Таблица id закрыта, и если в этой версии Mindustry её нет, рассылки кодируются для каждого соединения.
+     */
+    private static synchronized boolean register() {
+        if (attempted) {
+            return registered;
+        }
+
+        attempted = true;
+        ObjectIntMap<Class<?>> packetToId = null;
+        try {
+            packetToId = Reflect.get(Net.class, "packetToId");
+        } catch (Throwable t) {
+            Log.err("Cannot read the packet id table Net.packetToId, this Mindustry version is not supported: @", t);
+        }
+
+        if (packetToId != null) {
+            registered = alias(packetToId, PreparedMessage.class, SendMessageCallPacket.class) &
+                    alias(packetToId, PreparedLabel.class, LabelCallPacket.class) &
+                    alias(packetToId, PreparedInfoPopup.class, InfoPopupCallPacket.class);
+        }
+
+        if (!registered) {
+            Log.warn("Prepared packets are not available, broadcasts will be encoded per connection");
+        }
+        return registered;
+    }
+
+    private static boolean alias(ObjectIntMap<Class<?>> packetToId, Class<?> prepared, Class<?> original) {
+        int id = packetToId.get(original, -1);
+        if (id == -1) {
+            Log.err("Packet @ is not registered in Net.packetToId", original.getSimpleName());
+            return false;
+        }
+        packetToId.put(prepared, id);
+        return true;
+    }
+
+    /** Сообщение в чат: статичное кодируется заранее, с подстановками рендерится и кодируется один раз на рассылку. */
+    static class Broadcast {
+        private final Template template;
+        private final Packet prepared;
+
+        Broadcast(Template template) {
+            this.template = template;
+            this.prepared = template.isDynamic() ? null : message(template.render());
+        }
+
+        public Packet packet() {
+            return prepared != null ? prepared : message(template.render());
+        }
+    }
+
+    /** Пакет с телом, закодированным один раз; при отправке копируются готовые байты. */
+    static class Prepared extends Packet {
+        private final byte[] bytes;
+        private final int priority;
+
+        Prepared(Packet packet) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+            packet.write(new Writes(new DataOutputStream(out)));
+            this.bytes = out.toByteArray();
+            this.priority = packet.getPriority();
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public void write(Writes write) {
+            write.b(bytes);
+        }
+    }
+
+    // подклассы нужны только как ключи таблицы id, у каждого типа пакета свой id
+    static final class PreparedMessage extends Prepared {
+        PreparedMessage(Packet packet) {
+            super(packet);
+        }
+    }
+
+    static final class PreparedLabel extends Prepared {
+        PreparedLabel(Packet packet) {
+            super(packet);
+        }
+    }
+
+    static final class PreparedInfoPopup extends Prepared {
+        PreparedInfoPopup(Packet packet) {
+            super(packet);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package sky;
+
+import arc.files.Fi;
+import arc.func.Cons3;
+import arc.struct.IntMap;
+import arc.struct.Seq;
+import arc.util.Nullable;
+import mindustry.gen.Player;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Модерация чата в общем чат фильтре: флуд, повторы и запрещённые слова.
+ * <p>
+ * Состояние игрока это два кольцевых буфера фиксированного размера: время последних
+ * {@link Config.Moderation#floodMessages} сообщений и хеши последних {@link Config.Moderation#duplicateWindow}.
+ * Нормализованный текст, отметки совпадений и позиции живут в общих буферах, поэтому на сообщение без
+ * нарушений не создаётся объектов. Вызывается только из игрового потока.
+ */
+class ChatModeration {
+
+    private final IntMap<ChatState> states = new IntMap<>();
+    private final LongAdder[] counters = new LongAdder[Config.ModerationAction.values().length];
+    private final StringBuilder normalized = new StringBuilder(128);
+    private final Cons3<Player, String, Long> kick;
+    private final Messages messages;
+
+    private int[] positions = new int[128];
+    private boolean[] hits = new boolean[128];
+    private Config.Moderation config = new Config.Moderation();
+    private WordFilter words = WordFilter.empty;
+
+    /** @param kick кик игрока с причиной и длительностью, чтобы Loader мог разослать его другим серверам */
+    public ChatModeration(Metrics metrics, Messages messages, Cons3<Player, String, Long> kick) {
+        this.kick = kick;
+        this.messages = messages;
+        for (Config.ModerationAction action : Config.ModerationAction.values()) {
+            counters[action.ordinal()] = metrics.counter("moderation." + action);
+        }
+    }
+
+    /** Размеры буферов могли измениться, поэтому накопленное состояние игроков сбрасывается. */
+    public void configure(Config.Moderation config, WordFilter words) {
+        this.config = config;
+        this.words = words;
+        states.clear();
+    }
+
+    /** Слова из настроек и из {@link Config.Moderation#wordsFile}, строки с {@code #} пропускаются. */
+    public static String[] words(Config.Moderation config, Fi directory) {
+        Seq<String> words = new Seq<>();
+        words.addAll(config.words);
+        Fi file = directory.child(config.wordsFile);
+        if (file.exists()) {
+            for (String line : file.readString().split("\n")) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    words.add(line);
+                }
+            }
+        }
+        return words.toArray(String.class);
+    }
+
+    public void remove(Player player) {
+        states.remove(player.id);
+    }
+
+    /** @return сообщение для отправки, замаскированное сообщение или {@code null} если оно не отправляется */
+    @Nullable
+    public String filter(Player player, String message, long now) {
+        ChatState state = states.get(player.id);
+        if (state == null) {
+            states.put(player.id, state = new ChatState(config));
+        }
+
+        if (now < state.mutedUntil) {
+            messages.send(player, "moderation.muted", (state.mutedUntil - now) / 1000 + 1);
+            return null;
+        }
+
+        normalize(message);
+
+        if (state.flood(now, config.floodWindowMillis)) {
+            return apply(player, state, config.floodAction, "moderation.reason.flood", now);
+        }
+        if (state.duplicate(hash(normalized), config.duplicateLimit)) {
+            return apply(player, state, config.duplicateAction, "moderation.reason.duplicate", now);
+        }
+        if (words.scan(normalized, hits)) {
+            if (config.wordAction == Config.ModerationAction.mask) {
+                counters[Config.ModerationAction.mask.ordinal()].increment();
+                return WordFilter.mask(message, normalized, positions, hits);
+            }
+            return apply(player, state, config.wordAction, "moderation.reason.words", now);
+        }
+        return message;
+    }
+
+    private void normalize(String text) {
+        if (positions.length < text.length()) {
+            positions = new int[text.length()];
+            hits = new boolean[text.length()];
+        }
+        normalized.setLength(0);
+        WordFilter.normalize(text, normalized, positions);
+        Arrays.fill(hits, 0, normalized.length(), false);
+    }
+
+    @Nullable
+    private String apply(Player player, ChatState state, Config.ModerationAction action, String reasonKey, long now) {
+        counters[action.ordinal()].increment();
+        String reason = messages.get(reasonKey, player.locale);
+        switch (action) {
+            case mask, drop -> messages.send(player, "moderation.dropped", reason);
+            case mute -> {
+                state.mutedUntil = now + config.muteMillis;
+                messages.send(player, "moderation.mute", config.muteMillis / 1000, reason);
+            }
+            case kick -> kick.get(player, messages.format("moderation.kick", player.locale, reason), config.kickDurationMillis);
+        }
+        return null;
+    }
+
+    private static int hash(CharSequence text) {
+        int hash = 0;
+        for (int i = 0; i < text.length(); i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash == 0 ? 1 : hash; // 0 означает пустую ячейку буфера
+    }
+
+    static class ChatState {
+        private final long[] times;
+        private final int[] hashes;
+        private int timeIndex, hashIndex;
+
+        long mutedUntil;
+
+        ChatState(Config.Moderation config) {
+            times = new long[config.floodMessages];
+            hashes = new int[config.duplicateWindow];
+        }
+
+        /** Записывает сообщение; флуд если вытесняемое из буфера было меньше окна назад. */
+        boolean flood(long now, long windowMillis) {
+            long oldest = times[timeIndex];
+            times[timeIndex] = now;
+            timeIndex = (timeIndex + 1) % times.length;
+            return oldest != 0 && now - oldest < windowMillis;
+        }
+
+        /** Записывает хеш; повтор если такой уже встречался {@code limit} раз среди последних. */
+        boolean duplicate(int hash, int limit) {
+            int seen = 0;
+            for (int h : hashes) {
+                if (h == hash) {
+                    seen++;
+                }
+            }
+            hashes[hashIndex] = hash;
+            hashIndex = (hashIndex + 1) % hashes.length;
+            return seen >= limit;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package sky;
 
 import arc.graphics.Color;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 
@@ -9,55 +10,233 @@ import java.util.*;
 public class Config {
 
     public Common common = new Common();
+    public Effects effects = new Effects();
+    public Scripts scripts = new Scripts();
     public Authorization authorization = new Authorization();
     public DynamicDays dynamicDays = new DynamicDays();
     public UpdateDesc updateDesc = new UpdateDesc();
     public UpdateChat updateChat = new UpdateChat();
     public AutoGc autoGc = new AutoGc();
     public AdvertisingBanner advertisingBanner = new AdvertisingBanner();
+    public Metrics metrics = new Metrics();
+    public Moderation moderation = new Moderation();
+    public LoadShedding loadShedding = new LoadShedding();
+    public Shared shared = new Shared();
+    public Pacing pacing = new Pacing();
+    public Audit audit = new Audit();
 
     @Override
     public String toString() {
         return "Config{" +
                 "common=" + common +
+                ", effects=" + effects +
+                ", scripts=" + scripts +
                 ", authorization=" + authorization +
                 ", dynamicDays=" + dynamicDays +
                 ", updateDesc=" + updateDesc +
                 ", updateChat=" + updateChat +
                 ", autoGc=" + autoGc +
                 ", advertisingBanner=" + advertisingBanner +
+                ", metrics=" + metrics +
+                ", moderation=" + moderation +
+                ", loadShedding=" + loadShedding +
+                ", shared=" + shared +
+                ", pacing=" + pacing +
+                ", audit=" + audit +
                 '}';
     }
 
+    /** Проверка значений, которые Jackson пропустит, но с которыми плагин работать не сможет. */
+    public void validate() {
+        require(common.hubCheckIntervalMillis > 0, "common.hubCheckIntervalMillis must be positive");
+        require(!common.hubAddresses.contains(null), "common.hubAddresses contains null");
+        for (String hub : common.hubs()) {
+            int colon = hub.lastIndexOf(':');
+            require(colon < 0 || validPort(hub.substring(colon + 1)), "Invalid hub address: " + hub);
+        }
+        require(effects.emitIntervalMillis >= 0, "effects.emitIntervalMillis must not be negative");
+        require(effects.viewRadius > 0, "effects.viewRadius must be positive");
+        require(scripts.syncBudgetMillis > 0 && scripts.queryBudgetMillis > 0, "scripts budgets must be positive");
+        require(scripts.instructionThreshold > 0, "scripts.instructionThreshold must be positive");
+        require(authorization.timeoutMillis > 0, "authorization.timeoutMillis must be positive");
+        require(authorization.reminderIntervalMillis > 0, "authorization.reminderIntervalMillis must be positive");
+        require(authorization.ipBurst > 0 && authorization.subnetBurst > 0, "authorization burst limits must be positive");
+        require(authorization.ipPerMinute > 0 && authorization.subnetPerMinute > 0, "authorization refill rates must be positive");
+        require(authorization.maxPending > 0, "authorization.maxPending must be positive");
+        require(authorization.admissionTableSize > 0, "authorization.admissionTableSize must be positive");
+        require(authorization.trustTtlMillis >= 0, "authorization.trustTtlMillis must not be negative");
+        require(authorization.trustCapacity > 0 && authorization.trustCapacity <= TrustStore.maxCapacity,
+                "authorization.trustCapacity must be between 1 and " + TrustStore.maxCapacity);
+        require(dynamicDays.updateInterval > 0, "dynamicDays.updateInterval must be positive");
+        require(dynamicDays.stepsPerPeriod >= 1 && dynamicDays.stepsPerPeriod <= 60, "dynamicDays.stepsPerPeriod must be between 1 and 60");
+        require(updateDesc.updateInterval > 0, "updateDesc.updateInterval must be positive");
+        require(updateChat.updateInterval > 0, "updateChat.updateInterval must be positive");
+        require(autoGc.updateInterval > 0, "autoGc.updateInterval must be positive");
+        require(autoGc.checkInterval > 0, "autoGc.checkInterval must be positive");
+        require(autoGc.heapThreshold > 0 && autoGc.heapThreshold < 1, "autoGc.heapThreshold must be between 0 and 1");
+
+        for (int hour = 0; hour < 24; hour++) {
+            int h = hour;
+            var parameter = dynamicDays.timeParameters.entrySet().stream()
+                    .filter(e -> e.getValue().contains(h))
+                    .findFirst();
+            require(parameter.isPresent(), "dynamicDays.timeParameters does not cover hour " + hour);
+            require(dynamicDays.lightingParameters.containsKey(parameter.get().getKey()),
+                    "dynamicDays.lightingParameters has no color for '" + parameter.get().getKey() + "'");
+        }
+
+        require(!moderation.words.contains(null), "moderation.words contains null");
+        require(moderation.floodMessages > 0 && moderation.floodWindowMillis > 0, "moderation flood limits must be positive");
+        require(moderation.duplicateWindow > 0 && moderation.duplicateLimit > 0, "moderation duplicate limits must be positive");
+        require(moderation.muteMillis >= 0 && moderation.kickDurationMillis >= 0, "moderation durations must not be negative");
+
+        require(loadShedding.budgetMicros > 0, "loadShedding.budgetMicros must be positive");
+        require(loadShedding.minTps >= 0, "loadShedding.minTps must not be negative");
+        require(loadShedding.maxDeferrals >= 0, "loadShedding.maxDeferrals must not be negative");
+
+        require(shared.capacity > 0, "shared.capacity must be positive");
+        require(shared.pollIntervalMillis > 0 && shared.peerTimeoutMillis > 0, "shared intervals must be positive");
+        require(shared.instance.matches("[\\w.-]*"), "shared.instance may contain only letters, digits, '.', '_' and '-'");
+
+        require(pacing.perTick > 0 && pacing.perConnection > 0, "pacing limits must be positive");
+        require(pacing.queueLimit > 0, "pacing.queueLimit must be positive");
+        require(pacing.maxDelayMillis > 0, "pacing.maxDelayMillis must be positive");
+
+        require(audit.maxFileBytes > 0 && audit.rotateMillis > 0, "audit rotation limits must be positive");
+        require(audit.maxFiles > 0, "audit.maxFiles must be positive");
+        require(audit.syncIntervalMillis > 0, "audit.syncIntervalMillis must be positive");
+        require(audit.queueLimit > 0, "audit.queueLimit must be positive");
+
+        for (Banner banner : advertisingBanner.banners) {
+            require(banner != null, "advertisingBanner.banners contains null");
+            require(advertisingBanner.mode != Mode.queue || banner.timeLife >= 0,
+                    "advertisingBanner.banners timeLife must not be negative in queue mode");
+        }
+    }
+
+    static boolean validPort(String port) {
+        if (!port.matches("\\d{1,5}")) {
+            return false;
+        }
+        int value = Integer.parseInt(port);
+        return value >= 1 && value <= 65535;
+    }
+
+    static void require(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
     public enum Mode {
         queue, // вывод поочереди всех банеров; timeLife не должен быть отрицательным и он обозначает время в секундах
         all // вывод всего и сразу
     }
 
+    public enum GcMode {
+        fixed, // System.gc() каждые updateInterval, как раньше
+        adaptive // сборка только после превышения heapThreshold, в момент когда сервер пуст или между волнами
+    }
+
+    public enum ModerationAction {
+        mask, // заменить слово звёздочками, для флуда и повторов работает как drop
+        drop, // не отправлять сообщение
+        mute, // не отправлять и молчать muteMillis
+        kick // кикнуть на kickDurationMillis
+    }
+
+    public enum TipSelection {
+        sequential, // по кругу среди подходящих
+        weighted // случайно с учётом weight
+    }
+
+    public enum HubRouting {
+        fastest, // наименьший пинг
+        leastLoaded // наименьшая доля занятых слотов, при равенстве наименьший пинг
+    }
+
     public static class PluginShard {
         public boolean enabled;
     }
 
+    public static class Scripts {
+        public long syncBudgetMillis = 50; // /js выполняется в игровом потоке, столько тик может быть заморожен
+        public long queryBudgetMillis = 10000; // /jsq выполняется в фоне над снимком мира
+        public int instructionThreshold = 10000; // как часто интерпретатор проверяет бюджет
+
+        @Override
+        public String toString() {
+            return "Scripts{" +
+                    "syncBudgetMillis=" + syncBudgetMillis +
+                    ", queryBudgetMillis=" + queryBudgetMillis +
+                    ", instructionThreshold=" + instructionThreshold +
+                    '}';
+        }
+    }
+
     public static class Common {
-        public String hubAddress;
+        public String hubAddress; // устаревший одиночный адрес, добавляется к hubAddresses
+        public List<String> hubAddresses = Collections.emptyList(); // host или host:port
+        public HubRouting hubRouting = HubRouting.leastLoaded;
+        public long hubCheckIntervalMillis = 10000; // 10 секунд
+
+        /** Все адреса лобби без повторов, в порядке из настроек. */
+        public List<String> hubs() {
+            Set<String> hubs = new LinkedHashSet<>(hubAddresses);
+            if (hubAddress != null) {
+                hubs.add(hubAddress);
+            }
+            return new ArrayList<>(hubs);
+        }
 
         @Override
         public String toString() {
             return "Common{" +
                     "hubAddress='" + hubAddress + '\'' +
+                    ", hubAddresses=" + hubAddresses +
+                    ", hubRouting=" + hubRouting +
+                    ", hubCheckIntervalMillis=" + hubCheckIntervalMillis +
+                    '}';
+        }
+    }
+
+    public static class Effects {
+        public long emitIntervalMillis = 100; // не чаще 10 раз в секунду
+        public float minDistance = 4f; // в мировых единицах, тайл = 8
+        public float viewRadius = 320f; // 40 тайлов, примерно половина экрана
+        public float broadcastRatio = 0.5f; // доля игроков в радиусе, после которой эффект отправляется всем
+
+        @Override
+        public String toString() {
+            return "Effects{" +
+                    "emitIntervalMillis=" + emitIntervalMillis +
+                    ", minDistance=" + minDistance +
+                    ", viewRadius=" + viewRadius +
+                    ", broadcastRatio=" + broadcastRatio +
                     '}';
         }
     }
 
     public static class Tips extends PluginShard {
         public long tipsShowInterval = 120000;
-        public List<String> tips = Collections.emptyList();
+        public TipSelection selection = TipSelection.sequential;
+        public String defaultLocale = "ru"; // для игроков, на чьём языке подсказок нет
+        // строки или объекты {text, weight, locale, tags}; читаются только в индекс TipStore, а здесь
+        // остаются для записи файла по умолчанию
+        @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+        public List<Object> tips = Collections.emptyList();
+
+        public void validate() {
+            require(tipsShowInterval > 0, "tipsShowInterval must be positive");
+            require(!defaultLocale.isEmpty(), "defaultLocale must not be empty");
+        }
 
         @Override
         public String toString() {
             return "Tips{" +
                     "tipsShowInterval=" + tipsShowInterval +
-                    ", tips=" + tips +
+                    ", selection=" + selection +
+                    ", defaultLocale='" + defaultLocale + '\'' +
                     ", enabled=" + enabled +
                     '}';
         }
@@ -67,6 +246,19 @@ public class Config {
         public String kickMessage = "[scarlet]Превышено время авторизации!";
         public long kickDurationMillis = 1000 * 60 * 2; // 2 минуты
         public long timeoutMillis = 180000; // 3 минуты
+        public long reminderIntervalMillis = 15000; // 15 секунд
+        // допуск к капче: ведро токенов на IP и на подсеть, пополнение в минуту. Подсеть это IPv4 /24 или IPv6 /64:
+        // все IPv6 адреса одной /64 (обычно один абонент или один хостинг) делят одно ведро подсети
+        public String rejectMessage = "[scarlet]Слишком много подключений, попробуйте позже.";
+        public int ipBurst = 3;
+        public float ipPerMinute = 6;
+        public int subnetBurst = 10;
+        public float subnetPerMinute = 30;
+        public int maxPending = 100; // одновременно ожидающих ввода кода
+        public int admissionTableSize = 4096; // записей в каждой таблице, применяется после перезапуска
+        // прошедшие капчу пары uuid+IP, 0 отключает; ёмкость применяется после перезапуска
+        public long trustTtlMillis = 1000L * 60 * 60 * 24 * 7; // 7 дней
+        public int trustCapacity = 65536;
 
         @Override
         public String toString() {
@@ -74,24 +266,45 @@ public class Config {
                     "kickMessage='" + kickMessage + '\'' +
                     ", kickDurationMillis=" + kickDurationMillis +
                     ", timeoutMillis=" + timeoutMillis +
+                    ", reminderIntervalMillis=" + reminderIntervalMillis +
+                    ", rejectMessage='" + rejectMessage + '\'' +
+                    ", ipBurst=" + ipBurst +
+                    ", ipPerMinute=" + ipPerMinute +
+                    ", subnetBurst=" + subnetBurst +
+                    ", subnetPerMinute=" + subnetPerMinute +
+                    ", maxPending=" + maxPending +
+                    ", admissionTableSize=" + admissionTableSize +
+                    ", trustTtlMillis=" + trustTtlMillis +
+                    ", trustCapacity=" + trustCapacity +
                     '}';
         }
     }
 
     public static class AutoGc extends PluginShard {
-        public long updateInterval = 3600000; // 1 hour
+        public GcMode mode = GcMode.adaptive;
+        public long updateInterval = 3600000; // 1 hour, только для fixed
+        public float heapThreshold = 0.85f; // доля старого поколения, занятая после сборки
+        public long checkInterval = 5000;
+        public long minIntervalMillis = 600000; // не чаще раза в 10 минут
+        public long maxDeferMillis = 300000; // дольше 5 минут удобного момента не ждём
 
         @Override
         public String toString() {
             return "AutoGc{" +
                     "enabled=" + enabled +
+                    ", mode=" + mode +
                     ", updateInterval=" + updateInterval +
+                    ", heapThreshold=" + heapThreshold +
+                    ", checkInterval=" + checkInterval +
+                    ", minIntervalMillis=" + minIntervalMillis +
+                    ", maxDeferMillis=" + maxDeferMillis +
                     '}';
         }
     }
 
     public static class DynamicDays extends PluginShard {
-        public long updateInterval = 30000; // 30 seconds
+        public long updateInterval = 30000; // 30 seconds, цвет меняется не чаще раза в минуту
+        public int stepsPerPeriod = 1; // смен освещения на период; каждая рассылает правила целиком, 1 даёт столько же рассылок, сколько раньше
         public Map<String, Color> lightingParameters = mapOf(
                 "morning", new Color(200f, 200f, 200f, 0.2f),
                 "day", new Color(0.005f, 0.0f, 0.02f, 0.0f),
@@ -110,12 +323,14 @@ public class Config {
             return "DynamicDays{" +
                     "enabled=" + enabled +
                     ", updateInterval=" + updateInterval +
+                    ", stepsPerPeriod=" + stepsPerPeriod +
                     ", lightingParameters=" + lightingParameters +
                     ", timeParameters=" + timeParameters +
                     '}';
         }
     }
 
+    // в desc, chat и подсказках доступны %localtime%, %status%, %online%, %map%, %wave%, %tps%, %uptime%, %network%
     public static class UpdateDesc extends PluginShard {
         public boolean enabled = true;
         public long updateInterval = 30000; // 30 seconds
@@ -207,6 +422,138 @@ public class Config {
         }
     }
 
+    // счётчики и задержки всегда собираются, enabled включает только HTTP эндпоинт для Prometheus
+    public static class Metrics extends PluginShard {
+        public String bind = "127.0.0.1";
+        public int port = 9105;
+
+        @Override
+        public String toString() {
+            return "Metrics{" +
+                    "enabled=" + enabled +
+                    ", bind='" + bind + '\'' +
+                    ", port=" + port +
+                    '}';
+        }
+    }
+
+    public static class Moderation extends PluginShard {
+        public List<String> words = Collections.emptyList(); // целыми словами, "*" с края разрешает часть слова
+        public String wordsFile = "rcr-banned-words.txt"; // по слову на строку, дополняет words
+        public ModerationAction wordAction = ModerationAction.mask;
+        public int floodMessages = 5; // больше стольких сообщений за floodWindowMillis считается флудом
+        public long floodWindowMillis = 5000;
+        public ModerationAction floodAction = ModerationAction.mute;
+        public int duplicateWindow = 4; // сколько последних сообщений сравнивается
+        public int duplicateLimit = 2; // повторов одного сообщения в окне до срабатывания
+        public ModerationAction duplicateAction = ModerationAction.drop;
+        public long muteMillis = 60000;
+        public long kickDurationMillis = 300000;
+
+        @Override
+        public String toString() {
+            return "Moderation{" +
+                    "enabled=" + enabled +
+                    ", words=" + words.size() +
+                    ", wordsFile='" + wordsFile + '\'' +
+                    ", wordAction=" + wordAction +
+                    ", floodMessages=" + floodMessages +
+                    ", floodWindowMillis=" + floodWindowMillis +
+                    ", floodAction=" + floodAction +
+                    ", duplicateWindow=" + duplicateWindow +
+                    ", duplicateLimit=" + duplicateLimit +
+                    ", duplicateAction=" + duplicateAction +
+                    ", muteMillis=" + muteMillis +
+                    ", kickDurationMillis=" + kickDurationMillis +
+                    '}';
+        }
+    }
+
+    public static class LoadShedding extends PluginShard {
+        public boolean enabled = true;
+        public long budgetMicros = 2000; // среднее время плагина на тик, ~12% тика при 60 TPS
+        public int minTps = 45; // ниже сервер уже не успевает, фоновая работа откладывается независимо от бюджета
+        public int maxDeferrals = 4; // запусков подряд, которые может пропустить задача normal
+
+        @Override
+        public String toString() {
+            return "LoadShedding{" +
+                    "enabled=" + enabled +
+                    ", budgetMicros=" + budgetMicros +
+                    ", minTps=" + minTps +
+                    ", maxDeferrals=" + maxDeferrals +
+                    '}';
+        }
+    }
+
+    public static class Pacing extends PluginShard {
+        public boolean enabled = true;
+        public int perTick = 40; // сообщений плагина за тик на весь сервер
+        public int perConnection = 2; // сообщений за тик одному игроку
+        public int queueLimit = 16; // сообщений в очереди игрока, лишние вытесняют самые старые
+        public long maxDelayMillis = 10000; // рассылка, не дошедшая за это время, уже неактуальна
+
+        @Override
+        public String toString() {
+            return "Pacing{" +
+                    "enabled=" + enabled +
+                    ", perTick=" + perTick +
+                    ", perConnection=" + perConnection +
+                    ", queueLimit=" + queueLimit +
+                    ", maxDelayMillis=" + maxDelayMillis +
+                    '}';
+        }
+    }
+
+    public static class Audit extends PluginShard {
+        public boolean enabled = true;
+        public String directory = "audit"; // относительно папки config, применяется после перезапуска
+        public long maxFileBytes = 16L * 1024 * 1024;
+        public long rotateMillis = 1000L * 60 * 60 * 24; // новый файл раз в сутки
+        public int maxFiles = 30;
+        public long syncIntervalMillis = 1000; // при падении теряется не больше секунды событий
+        public int queueLimit = 65536; // событий в очереди к писателю, сверх отбрасываются
+
+        @Override
+        public String toString() {
+            return "Audit{" +
+                    "enabled=" + enabled +
+                    ", directory='" + directory + '\'' +
+                    ", maxFileBytes=" + maxFileBytes +
+                    ", rotateMillis=" + rotateMillis +
+                    ", maxFiles=" + maxFiles +
+                    ", syncIntervalMillis=" + syncIntervalMillis +
+                    ", queueLimit=" + queueLimit +
+                    '}';
+        }
+    }
+
+    public static class Shared extends PluginShard {
+        public String directory = "../rcr-shared"; // общая для серверов машины, относительно папки config
+        public String instance = ""; // имя файла этого сервера, по умолчанию порт
+        public int capacity = 512; // событий в кольце, округляется вниз до степени двойки
+        public long pollIntervalMillis = 250;
+        public long peerTimeoutMillis = 10000; // сервер без сигнала жизни дольше не учитывается в онлайне
+        public boolean shareVerified = true; // прошедшие капчу не вводят код на других серверах
+        public boolean shareBans = true;
+        public boolean shareKicks = true;
+
+        @Override
+        public String toString() {
+            return "Shared{" +
+                    "enabled=" + enabled +
+                    ", directory='" + directory + '\'' +
+                    ", instance='" + instance + '\'' +
+                    ", capacity=" + capacity +
+                    ", pollIntervalMillis=" + pollIntervalMillis +
+                    ", peerTimeoutMillis=" + peerTimeoutMillis +
+                    ", shareVerified=" + shareVerified +
+                    ", shareBans=" + shareBans +
+                    ", shareKicks=" + shareKicks +
+                    '}';
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private static <K, V> Map<K, V> mapOf(Object... values) {
         Map<K, V> map = new LinkedHashMap<>();
@@ -0,0 +1,300 @@
+package sky;
+
+import arc.graphics.Color;
+import arc.util.Nullable;
+
+import java.io.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Бинарный снимок последней прошедшей проверку конфигурации, {@code rcr-config.bin}.
+ * <p>
+ * Запуск с неизменёнными JSON читает снимок вместо разбора Jackson: построение маппера и десериализаторов
+ * занимает заметную часть загрузки плагина, а снимок это открытые поля {@link Config} и его шардов с именами
+ * и тегами типов. Неизвестное поле или несовпавший тип значит, что классы изменились, и снимок отбрасывается.
+ * Поля каждого класса разбираются рефлексией один раз в {@link Shape}, дальше чтение и запись идут через
+ * {@link MethodHandle} без поиска полей и проверок доступа.
+ * <p>
+ * Для каждого JSON хранятся размер, время изменения и CRC32C. Совпадение размера и времени достаточно,
+ * иначе сравнивается содержимое, поэтому копирование или {@code touch} файла снимок не сбрасывают.
+ */
+class ConfigCodec {
+
+    static final String fileName = "rcr-config.bin";
+
+    private static final int magic = 0x52435243; // RCRC
+    private static final int version = 1;
+
+    private static final byte tagNull = 0, tagBoolean = 1, tagInt = 2, tagLong = 3, tagFloat = 4, tagDouble = 5,
+            tagString = 6, tagEnum = 7, tagList = 8, tagMap = 9, tagColor = 10, tagObject = 11;
+
+    private static final ClassValue<Shape> shapes = new ClassValue<>() {
+        @Override
+        protected Shape computeValue(Class<?> type) {
+            return new Shape(checked(type));
+        }
+    };
+
+    record Source(long length, long modified, long hash) {
+
+        static Source of(Path file) throws IOException {
+            long length = Files.size(file), modified = Files.getLastModifiedTime(file).toMillis();
+            return new Source(length, modified, hash(file));
+        }
+
+        /** Соответствует ли файл этому состоянию; отсутствующий файл не соответствует. */
+        boolean matches(Path file) {
+            try {
+                if (Files.size(file) != length) {
+                    return false;
+                }
+                return Files.getLastModifiedTime(file).toMillis() == modified || hash(file) == hash;
+            } catch (IOException e) { // в том числе файл удалён
+                return false;
+            }
+        }
+
+        private static long hash(Path file) throws IOException {
+            CRC32C crc = new CRC32C();
+            byte[] buffer = new byte[16 * 1024];
+            try (InputStream in = Files.newInputStream(file)) {
+                for (int read; (read = in.read(buffer)) > 0; ) {
+                    crc.update(buffer, 0, read);
+                }
+            }
+            return crc.getValue();
+        }
+    }
+
+    record Stored(Source configSource, Source tipsSource, Config config, Config.Tips tips) {
+
+        boolean fresh(Path configFile, Path tipsFile) {
+            return configSource.matches(configFile) && tipsSource.matches(tipsFile);
+        }
+    }
+
+    /** @return снимок или {@code null}, если файла нет или он от другой версии */
+    @Nullable
+    public static Stored read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (in.readInt() != magic || in.readInt() != version) {
+                return null;
+            }
+            Source config = new Source(in.readLong(), in.readLong(), in.readLong());
+            Source tips = new Source(in.readLong(), in.readLong(), in.readLong());
+            return new Stored(config, tips, (Config) readValue(in), (Config.Tips) readValue(in));
+        } catch (ClassCastException | ReflectiveOperationException | IllegalArgumentException e) {
+            throw new IOException("Config snapshot does not match the plugin classes: " + e, e);
+        }
+    }
+
+    /** Пишет во временный файл и переносит атомарно, оборванная запись не заменит прошлый снимок. */
+    public static void write(Path file, Source configSource, Source tipsSource, Config config, Config.Tips tips) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            for (Source source : new Source[]{configSource, tipsSource}) {
+                out.writeLong(source.length());
+                out.writeLong(source.modified());
+                out.writeLong(source.hash());
+            }
+            writeValue(out, config);
+            writeValue(out, tips);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static void writeValue(DataOutput out, @Nullable Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(tagNull);
+        } else if (value instanceof Boolean b) {
+            out.writeByte(tagBoolean);
+            out.writeBoolean(b);
+        } else if (value instanceof Integer i) {
+            out.writeByte(tagInt);
+            out.writeInt(i);
+        } else if (value instanceof Long l) {
+            out.writeByte(tagLong);
+            out.writeLong(l);
+        } else if (value instanceof Float f) {
+            out.writeByte(tagFloat);
+            out.writeFloat(f);
+        } else if (value instanceof Double d) {
+            out.writeByte(tagDouble);
+            out.writeDouble(d);
+        } else if (value instanceof String s) {
+            out.writeByte(tagString);
+            out.writeUTF(s);
+        } else if (value instanceof Enum<?> e) {
+            out.writeByte(tagEnum);
+            out.writeUTF(e.getDeclaringClass().getName());
+            out.writeUTF(e.name());
+        } else if (value instanceof List<?> list) {
+            out.writeByte(tagList);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            out.writeByte(tagMap);
+            out.writeInt(map.size());
+            for (var entry : map.entrySet()) {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof Color color) {
+            out.writeByte(tagColor);
+            out.writeInt(color.rgba8888());
+        } else {
+            Shape shape = shapes.get(value.getClass());
+            out.writeByte(tagObject);
+            out.writeUTF(value.getClass().getName());
+            out.writeShort(shape.names.length);
+            for (int i = 0; i < shape.names.length; i++) {
+                out.writeUTF(shape.names[i]);
+                writeValue(out, shape.get(i, value));
+            }
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Object readValue(DataInput in) throws IOException, ReflectiveOperationException {
+        byte tag = in.readByte();
+        return switch (tag) {
+            case tagNull -> null;
+            case tagBoolean -> in.readBoolean();
+            case tagInt -> in.readInt();
+            case tagLong -> in.readLong();
+            case tagFloat -> in.readFloat();
+            case tagDouble -> in.readDouble();
+            case tagString -> in.readUTF();
+            case tagEnum -> {
+                Class<?> type = checked(Class.forName(in.readUTF(), false, ConfigCodec.class.getClassLoader()));
+                yield Enum.valueOf((Class<Enum>) type.asSubclass(Enum.class), in.readUTF());
+            }
+            case tagList -> {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                yield list;
+            }
+            case tagMap -> {
+                int size = in.readInt();
+                Map<Object, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(readValue(in), readValue(in));
+                }
+                yield map;
+            }
+            case tagColor -> new Color(in.readInt());
+            case tagObject -> {
+                Shape shape = shapes.get(Class.forName(in.readUTF(), false, ConfigCodec.class.getClassLoader()));
+                Object object = shape.create();
+                int count = in.readUnsignedShort();
+                for (int i = 0; i < count; i++) {
+                    shape.set(in.readUTF(), object, readValue(in));
+                }
+                yield object;
+            }
+            default -> throw new IOException("Unknown value tag " + tag);
+        };
+    }
+
+    /** Снимок создаёт объекты только классов конфигурации. */
+    private static Class<?> checked(Class<?> type) {
+        if (type != Config.class && type.getEnclosingClass() != Config.class) {
+            throw new IllegalArgumentException("Not a configuration class: " + type.getName());
+        }
+        return type;
+    }
+
+    /** Конструктор и доступ к полям класса конфигурации, строится один раз на класс. */
+    static class Shape {
+        private static final MethodType getterType = MethodType.methodType(Object.class, Object.class),
+                setterType = MethodType.methodType(void.class, Object.class, Object.class);
+
+        final String[] names;
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final MethodHandle constructor;
+        private final MethodHandle[] getters, setters;
+
+        /** Открытые поля с учётом наследования; поле шарда, скрывающее {@link Config.PluginShard#enabled}, пишется одно. */
+        Shape(Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isPublic(modifiers) && !Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)
+                            && !indexes.containsKey(field.getName())) {
+                        indexes.put(field.getName(), fields.size());
+                        fields.add(field);
+                    }
+                }
+            }
+
+            names = new String[fields.size()];
+            getters = new MethodHandle[fields.size()];
+            setters = new MethodHandle[fields.size()];
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            try {
+                constructor = lookup.findConstructor(type, MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+                for (int i = 0; i < names.length; i++) {
+                    Field field = fields.get(i);
+                    names[i] = field.getName();
+                    getters[i] = lookup.unreflectGetter(field).asType(getterType);
+                    setters[i] = lookup.unreflectSetter(field).asType(setterType);
+                }
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Unable to access " + type.getName() + ": " + e, e);
+            }
+        }
+
+        Object create() throws ReflectiveOperationException {
+            try {
+                return (Object) constructor.invokeExact();
+            } catch (Throwable t) {
+                throw new ReflectiveOperationException(t);
+            }
+        }
+
+        Object get(int index, Object object) throws IOException {
+            try {
+                return (Object) getters[index].invokeExact(object);
+            } catch (Throwable t) {
+                throw new IOException("Unable to read " + names[index] + ": " + t, t);
+            }
+        }
+
+        /** Поле, удалённое из класса или ставшее другого типа, значит что снимок от других классов. */
+        void set(String name, Object object, @Nullable Object value) throws ReflectiveOperationException {
+            Integer index = indexes.get(name);
+            if (index == null) {
+                throw new NoSuchFieldException(name);
+            }
+            try {
+                setters[index].invokeExact(object, value);
+            } catch (ClassCastException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new ReflectiveOperationException(t);
+            }
+        }
+    }
+}
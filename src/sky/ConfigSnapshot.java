@@ -0,0 +1,12 @@
+package sky;
+
+/**
+ * Согласованные конфигурации и индекс подсказок, публикуемые целиком. После публикации не изменяются.
+ */
+record ConfigSnapshot(Config config, Config.Tips tips, TipStore tipStore) {
+
+    public void validate() {
+        config.validate();
+        tips.validate();
+    }
+}
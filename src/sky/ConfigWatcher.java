@@ -0,0 +1,268 @@
+package sky;
+
+import arc.Core;
+import arc.files.Fi;
+import arc.func.Cons;
+import arc.graphics.Color;
+import arc.util.Log;
+import arc.util.Nullable;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Загрузка {@code rcr-plugin.json}/{@code rcr-tips.json} и их перечитывание на лету.
+ * <p>
+ * При запуске читается бинарный снимок {@link ConfigCodec} последней прошедшей проверку конфигурации,
+ * а Jackson нужен только если снимка нет. Если JSON изменились с записи снимка, плагин стартует со снимком,
+ * а файлы разбираются в фоне и применяются как обычное изменение. Ошибка в JSON при запуске не страшна,
+ * пока есть снимок; без снимка плагин не запускается, чтобы сервер не работал молча на значениях по умолчанию.
+ * <p>
+ * Изменения файлов отслеживаются {@link WatchService} в фоновом потоке, там же новые файлы
+ * разбираются и проверяются. Прошедший проверку снимок публикуется атомарно и передаётся
+ * слушателю в игровом потоке. При ошибке остаётся старый снимок, причина пишется в лог.
+ */
+class ConfigWatcher {
+
+    static final String configFileName = "rcr-plugin.json", tipsFileName = "rcr-tips.json";
+
+    /** Редакторы часто пишут файл в несколько приёмов, поэтому ждём пока изменения утихнут. */
+    private static final long settleMillis = 300;
+
+    private final AtomicReference<ConfigSnapshot> current = new AtomicReference<>();
+    private final JsonFactory factory = new JsonFactory(); // индекс подсказок строится потоковым разбором без маппера
+    private final Fi directory;
+
+    @Nullable
+    private volatile JsonMapper mapper;
+    private volatile boolean stale; // запущены со снимком, а JSON с тех пор изменились
+
+    public ConfigWatcher(Fi directory) {
+        this.directory = directory;
+    }
+
+    /** Строится при первом использовании: при запуске со снимком это фоновый поток наблюдения. */
+    JsonMapper mapper() {
+        JsonMapper result = mapper;
+        if (result == null) {
+            synchronized (this) {
+                if ((result = mapper) == null) {
+                    mapper = result = JsonMapper.builder()
+                            .visibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY)
+                            .visibility(PropertyAccessor.GETTER, JsonAutoDetect.Visibility.ANY)
+                            .visibility(PropertyAccessor.CREATOR, JsonAutoDetect.Visibility.ANY)
+                            .configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true)
+                            .addMixIn(Color.class, SerializationSupport.ColorMixin.class)
+                            .defaultPrettyPrinter(new SerializationSupport.CorrectPrettyPrinter())
+                            .build();
+                }
+            }
+        }
+        return result;
+    }
+
+    public ConfigSnapshot current() {
+        return current.get();
+    }
+
+    /** Первичная загрузка; бросает, только если нет ни годного снимка, ни годных JSON. */
+    public ConfigSnapshot load() {
+        long start = System.nanoTime();
+        Path configFile = directory.child(configFileName).file().toPath(), tipsFile = directory.child(tipsFileName).file().toPath();
+
+        ConfigCodec.Stored stored = null;
+        try {
+            stored = ConfigCodec.read(snapshotFile());
+        } catch (Throwable t) {
+            Log.warn("Config snapshot is not usable, parsing JSON: @", t.getMessage());
+        }
+
+        Config config;
+        Config.Tips tips;
+        TipStore tipStore = null;
+        if (stored != null && validSnapshot(stored)) {
+            config = stored.config();
+            tips = stored.tips();
+            stale = !stored.fresh(configFile, tipsFile);
+            if (stale) {
+                // старый индекс подходит к снимку, новый соберётся вместе с разбором JSON
+                tipStore = openIndex();
+                Log.info("Config files changed since the last start, they are applied after parsing in the background");
+            }
+        } else {
+            try {
+                ConfigSnapshot parsed = parse(true);
+                config = parsed.config();
+                tips = parsed.tips();
+                tipStore = parsed.tipStore();
+            } catch (Throwable t) {
+                Log.err("Invalid configuration and no usable snapshot, the plugin is not started: @", t.getMessage());
+                throw new RuntimeException(t);
+            }
+        }
+
+        if (tipStore == null) {
+            try {
+                tipStore = openTips();
+            } catch (Throwable t) {
+                Log.err("Tips were not loaded: @", t.getMessage());
+                tipStore = TipStore.empty();
+            }
+        }
+
+        ConfigSnapshot snapshot = new ConfigSnapshot(config, tips, tipStore);
+        current.set(snapshot);
+        Log.info("Config loaded in @ ms, @ tips indexed", (System.nanoTime() - start) / 1_000_000, tipStore.size());
+        return snapshot;
+    }
+
+    private static boolean validSnapshot(ConfigCodec.Stored stored) {
+        try {
+            stored.config().validate();
+            stored.tips().validate();
+            return true;
+        } catch (IllegalArgumentException e) {
+            Log.warn("Config snapshot is not valid anymore, parsing JSON: @", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Разбор и проверка обоих JSON с записью снимка.
+     * @param create создать отсутствующие файлы со значениями по умолчанию
+     */
+    private ConfigSnapshot parse(boolean create) throws IOException {
+        Fi configFi = directory.child(configFileName), tipsFi = directory.child(tipsFileName);
+        if (create) {
+            createDefault(configFi, new Config());
+            createDefault(tipsFi, new Config.Tips());
+        }
+
+        // состояние файлов снимается до чтения: изменение во время разбора даст ещё одно событие и разбор
+        Path configFile = configFi.file().toPath(), tipsFile = tipsFi.file().toPath();
+        ConfigCodec.Source configSource = ConfigCodec.Source.of(configFile), tipsSource = ConfigCodec.Source.of(tipsFile);
+
+        Config config = mapper().readValue(configFi.readString(), Config.class);
+        Config.Tips tips = mapper().readValue(tipsFi.file(), Config.Tips.class); // сами подсказки пропускаются, их читает TipStore
+        ConfigSnapshot snapshot = new ConfigSnapshot(config, tips, openTips());
+        snapshot.validate();
+
+        try {
+            ConfigCodec.write(snapshotFile(), configSource, tipsSource, config, tips);
+        } catch (IOException e) {
+            Log.warn("Config snapshot was not saved, the next start will parse JSON: @", e.getMessage());
+        }
+        return snapshot;
+    }
+
+    private void createDefault(Fi file, Object value) throws IOException {
+        if (!file.exists()) {
+            file.writeString(mapper().writerWithDefaultPrettyPrinter().writeValueAsString(value));
+            Log.info("Created @ with default values", file.absolutePath());
+        }
+    }
+
+    /** Запускает фоновое наблюдение, {@code listener} вызывается в игровом потоке. */
+    public void watch(Cons<ConfigSnapshot> listener) {
+        Thread thread = new Thread(() -> {
+            try (WatchService service = FileSystems.getDefault().newWatchService()) {
+                Path dir = directory.file().toPath();
+                dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+                // маппер и его сериализаторы нужны diff в игровом потоке, строятся заранее здесь
+                mapper().convertValue(mapper().valueToTree(current.get().config()), Config.class);
+                if (stale) {
+                    stale = false;
+                    reload(listener);
+                }
+
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = service.take();
+                    boolean relevant = false;
+                    do {
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            if (event.context() instanceof Path path) {
+                                String name = path.getFileName().toString();
+                                relevant |= name.equals(configFileName) || name.equals(tipsFileName);
+                            }
+                        }
+                        key.reset();
+                    } while ((key = service.poll(settleMillis, TimeUnit.MILLISECONDS)) != null);
+
+                    if (relevant) {
+                        reload(listener);
+                    }
+                }
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                Log.err("Config watcher stopped");
+                Log.err(t);
+            }
+        }, "rcr-config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void reload(Cons<ConfigSnapshot> listener) {
+        ConfigSnapshot next;
+        try {
+            next = parse(false);
+        } catch (Throwable t) {
+            Log.err("Config was not reloaded, keeping the previous one: @", t.getMessage());
+            return;
+        }
+
+        current.set(next);
+        Log.info("Config reloaded");
+        Core.app.post(() -> listener.get(next));
+    }
+
+    /** Индекс пересобирается здесь же, в фоновом потоке, если JSON подсказок изменился. */
+    private TipStore openTips() throws IOException {
+        return TipStore.open(directory.child(tipsFileName), directory.child(TipStore.indexFileName), factory);
+    }
+
+    @Nullable
+    private TipStore openIndex() {
+        try {
+            return TipStore.openIndex(directory.child(TipStore.indexFileName));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Path snapshotFile() {
+        return directory.child(ConfigCodec.fileName).file().toPath();
+    }
+
+    /** Имена шардов (полей {@link Config} и {@code tips}), чьё содержимое отличается. */
+    public Set<String> diff(ConfigSnapshot previous, ConfigSnapshot next) {
+        Set<String> changed = new LinkedHashSet<>();
+        JsonMapper mapper = mapper();
+        JsonNode before = mapper.valueToTree(previous.config()), after = mapper.valueToTree(next.config());
+        for (Iterator<String> it = after.fieldNames(); it.hasNext(); ) {
+            String name = it.next();
+            if (!after.get(name).equals(before.get(name))) {
+                changed.add(name);
+            }
+        }
+
+        if (!mapper.valueToTree(previous.tips()).equals(mapper.valueToTree(next.tips())) ||
+                !previous.tipStore().sameSource(next.tipStore())) {
+            changed.add("tips");
+        }
+        return changed;
+    }
+}
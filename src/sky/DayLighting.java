@@ -0,0 +1,80 @@
+package sky;
+
+import arc.graphics.Color;
+
+import java.util.Map;
+
+/**
+ * Освещение на каждую минуту суток, построенное из {@link Config.DynamicDays}.
+ * <p>
+ * Цвет периода считается цветом середины его непрерывного отрезка часов, между серединами соседних
+ * отрезков цвет интерполируется линейно (через полночь тоже). Правила рассылаются целиком, поэтому
+ * сутки квантуются по времени: каждый отрезок делится на {@link Config.DynamicDays#stepsPerPeriod} ступеней
+ * с цветом середины ступени. При одной ступени цвет меняется только на границах периодов, как до интерполяции,
+ * и рассылок правил столько же.
+ */
+class DayLighting {
+
+    private final int[] minutes = new int[1440]; // rgba8888
+
+    public DayLighting(DayPeriods periods, Map<String, Color> colors, int stepsPerPeriod) {
+        int[] keyMinutes = new int[24], segmentStarts = new int[24], segmentLengths = new int[24];
+        Color[] keyColors = new Color[24];
+        int keys = 0;
+
+        int start = 0;
+        while (start < 24 && periods.at(start).equals(periods.at((start + 23) % 24))) {
+            start++;
+        }
+
+        if (start == 24) { // весь день один период
+            keyMinutes[0] = 0;
+            segmentStarts[0] = 0;
+            segmentLengths[0] = 24;
+            keyColors[keys++] = colors.get(periods.at(0));
+        } else {
+            for (int offset = 0; offset < 24; ) {
+                int hour = (start + offset) % 24, length = 1;
+                while (offset + length < 24 && periods.at((start + offset + length) % 24).equals(periods.at(hour))) {
+                    length++;
+                }
+                keyMinutes[keys] = (hour * 60 + length * 30) % 1440;
+                segmentStarts[keys] = hour;
+                segmentLengths[keys] = length;
+                keyColors[keys++] = colors.get(periods.at(hour));
+                offset += length;
+            }
+        }
+
+        Color color = new Color();
+        for (int segment = 0; segment < keys; segment++) {
+            int from = segmentStarts[segment] * 60, length = segmentLengths[segment] * 60;
+            for (int step = 0; step < stepsPerPeriod; step++) {
+                int stepStart = step * length / stepsPerPeriod, stepEnd = (step + 1) * length / stepsPerPeriod;
+                int light = interpolate(color, keys, keyMinutes, keyColors, (from + (stepStart + stepEnd) / 2) % 1440).rgba8888();
+                for (int minute = stepStart; minute < stepEnd; minute++) {
+                    minutes[(from + minute) % 1440] = light;
+                }
+            }
+        }
+    }
+
+    private static Color interpolate(Color out, int keys, int[] keyMinutes, Color[] keyColors, int minute) {
+        // ближайший ключ не позже минуты, с переходом через полночь
+        int from = keys - 1;
+        for (int k = 0; k < keys; k++) {
+            if (Math.floorMod(minute - keyMinutes[k], 1440) < Math.floorMod(minute - keyMinutes[from], 1440)) {
+                from = k;
+            }
+        }
+        int to = (from + 1) % keys;
+        int span = keys == 1 ? 1440 : Math.floorMod(keyMinutes[to] - keyMinutes[from], 1440);
+        float progress = Math.floorMod(minute - keyMinutes[from], 1440) / (float) span;
+        return out.set(keyColors[from]).lerp(keyColors[to], progress).clamp();
+    }
+
+    /** Цвет для минуты суток 0..1439 в rgba8888. */
+    public int at(int minute) {
+        return minutes[minute];
+    }
+}
@@ -0,0 +1,72 @@
+package sky;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Таблица время суток по часам, построенная из {@link Config.DynamicDays#timeParameters}.
+ * <p>
+ * Вместо поиска по спискам часов при каждом вызове используется массив на 24 элемента,
+ * а локальное время считается из {@link System#currentTimeMillis()} с закешированным смещением пояса.
+ * Смещение и время его проверки лежат в одном неизменяемом объекте, потому что минуту спрашивают
+ * и игровой поток, и поток перечитывания конфигурации.
+ */
+class DayPeriods {
+
+    private static final long offsetRefreshMillis = 10 * 60 * 1000;
+
+    private record Offset(long millis, long checkedAt) {
+        static Offset at(long now) {
+            return new Offset(ZoneId.systemDefault().getRules().getOffset(Instant.ofEpochMilli(now)).getTotalSeconds() * 1000L, now);
+        }
+    }
+
+    private static volatile Offset offset = Offset.at(System.currentTimeMillis());
+
+    private final String[] periods = new String[24];
+    private final String[] localized = new String[24];
+
+    /** @param messages названия периодов {@code period.<имя>} в основном наборе, для {@code %status%} */
+    public DayPeriods(Map<String, List<Integer>> timeParameters, Messages messages) {
+        for (var parameter : timeParameters.entrySet()) {
+            for (int hour : parameter.getValue()) {
+                // часы вне суток (например 24 в настройках по умолчанию) никогда не наступают
+                if (hour >= 0 && hour < 24 && periods[hour] == null) {
+                    periods[hour] = parameter.getKey();
+                    localized[hour] = messages.get("period." + parameter.getKey(), null, parameter.getKey());
+                }
+            }
+        }
+    }
+
+    public String current() {
+        return at(minuteOfDay() / 60);
+    }
+
+    public String currentLocalized() {
+        int hour = minuteOfDay() / 60;
+        at(hour); // проверка что час покрыт настройками
+        return localized[hour];
+    }
+
+    public String at(int hour) {
+        String period = periods[hour];
+        if (period == null) {
+            throw new IllegalStateException("Incorrect time parameter!");
+        }
+        return period;
+    }
+
+    /** Минута локальных суток, 0..1439. */
+    static int minuteOfDay() {
+        long now = System.currentTimeMillis();
+        Offset current = offset;
+        if (now - current.checkedAt() > offsetRefreshMillis) {
+            // гонка двух потоков здесь безвредна: оба посчитают одно и то же смещение
+            offset = current = Offset.at(now);
+        }
+        return (int) Math.floorMod((now + current.millis()) / 60000, 1440L);
+    }
+}
@@ -0,0 +1,153 @@
+package sky;
+
+import arc.util.Log;
+import arc.util.Nullable;
+
+/**
+ * Хешированное колесо таймеров для дедлайнов (напоминания о коде, кик по таймауту).
+ * <p>
+ * Время делится на тики по {@code tickMillis}, дедлайн попадает в слот {@code tick & mask}.
+ * {@link #advance(long)} обходит только слоты прошедших тиков, поэтому пока ничего не наступило
+ * вызов стоит одно сравнение. Не потокобезопасно, вызывается только из игрового потока.
+ */
+class DeadlineWheel {
+
+    private final Deadline[] slots;
+    private final int mask;
+    private final long tickMillis;
+
+    private long currentTick = -1;
+    private int size;
+
+    public DeadlineWheel(long tickMillis, int slotCount) {
+        if (Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("Slot count must be a power of two!");
+        }
+
+        this.tickMillis = tickMillis;
+        this.slots = new Deadline[slotCount];
+        this.mask = slotCount - 1;
+    }
+
+    public Deadline schedule(Runnable task, long now, long delayMillis) {
+        if (currentTick == -1) {
+            currentTick = now / tickMillis;
+        }
+
+        // дедлайн всегда хотя бы на тик впереди, иначе он может попасть в уже пройденный слот
+        long tick = Math.max(currentTick + 1, (now + delayMillis + tickMillis - 1) / tickMillis);
+        Deadline deadline = new Deadline(this, task, tick);
+        link(deadline);
+        return deadline;
+    }
+
+    public void advance(long now) {
+        long target = now / tickMillis;
+        if (currentTick == -1) {
+            currentTick = target;
+            return;
+        }
+
+        if (target <= currentTick) {
+            return;
+        }
+
+        // после долгой паузы достаточно одного оборота колеса: сравнение с target подберёт всё просроченное
+        long from = Math.max(currentTick + 1, target - slots.length + 1);
+        currentTick = target;
+        if (size == 0) {
+            return;
+        }
+
+        for (long tick = from; tick <= target; tick++) {
+            Deadline expired = null;
+            Deadline d = slots[(int) (tick & mask)];
+            while (d != null) {
+                Deadline next = d.next;
+                if (d.tick <= target) {
+                    unlink(d);
+                    d.next = expired;
+                    expired = d;
+                }
+                d = next;
+            }
+
+            // задачи запускаются после обхода слота, так как они могут перепланировать себя
+            while (expired != null) {
+                Deadline next = expired.next;
+                expired.next = null;
+                if (!expired.done) { // могли отменить задачей из этого же слота
+                    expired.done = true;
+                    try {
+                        expired.task.run();
+                    } catch (Throwable t) {
+                        Log.err(t);
+                    }
+                }
+                expired = next;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void link(Deadline d) {
+        int slot = (int) (d.tick & mask);
+        Deadline head = slots[slot];
+        d.next = head;
+        if (head != null) {
+            head.prev = d;
+        }
+        slots[slot] = d;
+        d.linked = true;
+        size++;
+    }
+
+    private void unlink(Deadline d) {
+        int slot = (int) (d.tick & mask);
+        if (d.prev != null) {
+            d.prev.next = d.next;
+        } else {
+            slots[slot] = d.next;
+        }
+        if (d.next != null) {
+            d.next.prev = d.prev;
+        }
+        d.prev = d.next = null;
+        d.linked = false;
+        size--;
+    }
+
+    static class Deadline {
+        private final DeadlineWheel wheel;
+        private final Runnable task;
+        private final long tick;
+
+        @Nullable
+        private Deadline prev, next;
+        private boolean linked, done;
+
+        Deadline(DeadlineWheel wheel, Runnable task, long tick) {
+            this.wheel = wheel;
+            this.task = task;
+            this.tick = tick;
+        }
+
+        public boolean isPending() {
+            return !done;
+        }
+
+        public boolean cancel() {
+            if (done) {
+                return false;
+            }
+            done = true;
+            if (linked) {
+                wheel.unlink(this);
+            }
+            return true;
+        }
+    }
+}
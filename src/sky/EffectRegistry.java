@@ -0,0 +1,90 @@
+package sky;
+
+import arc.struct.IntMap;
+import arc.struct.ObjectMap;
+import arc.util.Log;
+import arc.util.Nullable;
+import mindustry.content.Fx;
+import mindustry.entities.Effect;
+import mindustry.gen.Player;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Эффекты движения, включённые через {@code /effect}.
+ * <p>
+ * Записи хранятся по id игрока, так что обновление обходит только игроков с эффектами,
+ * а частота отправки ограничивается настройками {@link Config.Effects}.
+ */
+class EffectRegistry {
+
+    private static ObjectMap<String, Effect> fxCache;
+
+    private final IntMap<EffectEntry> entries = new IntMap<>();
+
+    public void put(Player player, Effect effect) {
+        entries.put(player.id, new EffectEntry(player, effect));
+    }
+
+    public boolean remove(Player player) {
+        return entries.remove(player.id) != null;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public IntMap.Values<EffectEntry> entries() {
+        return entries.values();
+    }
+
+    /** Эффекты из {@link Fx} один раз собираются в таблицу по имени поля. */
+    @Nullable
+    public static Effect resolve(String name) {
+        if (fxCache == null) {
+            ObjectMap<String, Effect> cache = new ObjectMap<>();
+            for (Field field : Fx.class.getFields()) {
+                if (Modifier.isStatic(field.getModifiers()) && Effect.class.isAssignableFrom(field.getType())) {
+                    try {
+                        cache.put(field.getName(), (Effect) field.get(null));
+                    } catch (IllegalAccessException e) {
+                        Log.err(e);
+                    }
+                }
+            }
+            fxCache = cache;
+        }
+        return fxCache.get(name);
+    }
+
+    static class EffectEntry {
+        public final Player player;
+        public final Effect effect;
+
+        public long lastEmitTime;
+        public float lastX, lastY;
+
+        public EffectEntry(Player player, Effect effect) {
+            this.player = player;
+            this.effect = effect;
+            this.lastX = player.x;
+            this.lastY = player.y;
+        }
+
+        public boolean shouldEmit(long now, Config.Effects config) {
+            if (now - lastEmitTime < config.emitIntervalMillis) {
+                return false;
+            }
+
+            float dx = player.x - lastX, dy = player.y - lastY;
+            return dx * dx + dy * dy >= config.minDistance * config.minDistance;
+        }
+
+        public void emitted(long now) {
+            lastEmitTime = now;
+            lastX = player.x;
+            lastY = player.y;
+        }
+    }
+}
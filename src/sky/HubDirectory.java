@@ -0,0 +1,150 @@
+package sky;
+
+import arc.struct.Seq;
+import arc.util.Nullable;
+import arc.util.Time;
+import arc.util.Timer;
+import mindustry.Vars;
+
+/**
+ * Кеш доступности и пинга лобби для {@code /hub}.
+ * <p>
+ * Фоновая задача раз в {@link Config.Common#hubCheckIntervalMillis} пингует все адреса, а команда
+ * отвечает сразу из кеша, не дожидаясь сетевого запроса. Лобби считается недоступным после двух
+ * неудачных пингов подряд, чтобы одна потерянная UDP датаграмма не выключала его. При выборе лобби
+ * его счётчик игроков сразу увеличивается, и толпа после конца карты распределяется по всем лобби,
+ * а не уходит на одно до следующей проверки.
+ */
+class HubDirectory {
+
+    private static final int failuresToDown = 2;
+
+    private Seq<Endpoint> endpoints = new Seq<>();
+    private Config.HubRouting routing = Config.HubRouting.leastLoaded;
+    @Nullable
+    private Timer.Task task;
+
+    /** Пересобирает список адресов и перезапускает проверку; вызывается в игровом потоке. */
+    public void configure(Config.Common config) {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        Seq<Endpoint> next = new Seq<>();
+        for (String hub : config.hubs()) {
+            Endpoint endpoint = Endpoint.parse(hub);
+            // статистика уже известных лобби сохраняется, чтобы /hub не отказывал сразу после перезагрузки
+            Endpoint known = endpoints.find(e -> e.address.equals(endpoint.address) && e.port == endpoint.port);
+            next.add(known != null ? known : endpoint);
+        }
+        endpoints = next;
+        routing = config.hubRouting;
+
+        if (!endpoints.isEmpty()) {
+            // новые лобби недоступны до первого ответа, поэтому первый пинг сразу, а не на следующем кадре таймера
+            check();
+            float interval = config.hubCheckIntervalMillis / 1000f;
+            task = Timer.schedule(this::check, interval, interval);
+        }
+    }
+
+    public boolean isEmpty() {
+        return endpoints.isEmpty();
+    }
+
+    private void check() {
+        for (Endpoint endpoint : endpoints) {
+            // колбэки pingHost приходят в игровой поток
+            Vars.net.pingHost(endpoint.address, endpoint.port, host -> {
+                endpoint.ping = host.ping;
+                endpoint.players = host.players;
+                endpoint.playerLimit = host.playerLimit;
+                endpoint.failures = 0;
+                endpoint.checkedAt = Time.millis();
+            }, e -> endpoint.failures++);
+        }
+    }
+
+    /**
+     * Число игроков лобби на этой же машине из {@link SharedState}; оно свежее пинга, поэтому заменяет его.
+     * Лобби узнаётся по порту среди адресов loopback.
+     */
+    public void local(int port, int players) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.port == port && (endpoint.address.equals("localhost") || endpoint.address.startsWith("127."))) {
+                endpoint.players = players;
+            }
+        }
+    }
+
+    /** Лучшее доступное лобби с учётом выбранных ранее, либо {@code null} если все недоступны или заполнены. */
+    @Nullable
+    public Endpoint route() {
+        Endpoint best = null;
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.healthy() || endpoint.full()) {
+                continue;
+            }
+            if (best == null || compare(endpoint, best) < 0) {
+                best = endpoint;
+            }
+        }
+
+        if (best != null) {
+            best.players++;
+        }
+        return best;
+    }
+
+    private int compare(Endpoint a, Endpoint b) {
+        if (routing == Config.HubRouting.leastLoaded) {
+            int byLoad = Float.compare(a.load(), b.load());
+            if (byLoad != 0) {
+                return byLoad;
+            }
+        }
+        return Integer.compare(a.ping, b.ping);
+    }
+
+    public Seq<Endpoint> endpoints() {
+        return endpoints;
+    }
+
+    static class Endpoint {
+        public final String address;
+        public final int port;
+
+        public int ping, players, playerLimit, failures = failuresToDown;
+        public long checkedAt;
+
+        Endpoint(String address, int port) {
+            this.address = address;
+            this.port = port;
+        }
+
+        static Endpoint parse(String hub) {
+            int colon = hub.lastIndexOf(':');
+            return colon < 0 ? new Endpoint(hub, Vars.port) :
+                    new Endpoint(hub.substring(0, colon), Integer.parseInt(hub.substring(colon + 1)));
+        }
+
+        public boolean healthy() {
+            return failures < failuresToDown;
+        }
+
+        public boolean full() {
+            return playerLimit > 0 && players >= playerLimit;
+        }
+
+        /** Доля занятых слотов; без лимита считается по числу игроков на условные 100 слотов. */
+        float load() {
+            return players / (float) (playerLimit > 0 ? playerLimit : 100);
+        }
+
+        @Override
+        public String toString() {
+            return address + ":" + port;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package sky;
+
+import arc.struct.IntMap;
+import arc.struct.Seq;
+import mindustry.gen.Player;
+
+/**
+ * Пространственная сетка позиций игроков для адресной рассылки эффектов.
+ * <p>
+ * Размер ячейки равен радиусу обзора, поэтому всех, кто видит точку, достаточно искать
+ * в ячейке точки и восьми соседних. Позиции обновляются инкрементально: игрок перекладывается
+ * между ячейками только когда пересекает их границу.
+ */
+class InterestGrid {
+
+    private final IntMap<Seq<Player>> cells = new IntMap<>();
+    private final IntMap<Tracked> tracked = new IntMap<>();
+
+    private float cellSize;
+
+    public InterestGrid(float cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public void update(Iterable<Player> players, float cellSize) {
+        if (this.cellSize != cellSize) {
+            this.cellSize = cellSize;
+            cells.clear();
+            tracked.clear();
+        }
+
+        for (Player player : players) {
+            int cell = cellOf(player.x, player.y);
+            Tracked t = tracked.get(player.id);
+            if (t == null) {
+                tracked.put(player.id, new Tracked(player, cell));
+                cell(cell).add(player);
+            } else if (t.cell != cell) {
+                removeFromCell(t.cell, player);
+                t.cell = cell;
+                cell(cell).add(player);
+            }
+        }
+    }
+
+    public void remove(Player player) {
+        Tracked t = tracked.remove(player.id);
+        if (t != null) {
+            removeFromCell(t.cell, t.player);
+        }
+    }
+
+    /** Собирает в {@code out} игроков, находящихся не дальше {@code radius} от точки. */
+    public Seq<Player> query(float x, float y, float radius, Seq<Player> out) {
+        out.clear();
+        int cx = (int) Math.floor(x / cellSize), cy = (int) Math.floor(y / cellSize);
+        float r2 = radius * radius;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                Seq<Player> cell = cells.get(pack(cx + dx, cy + dy));
+                if (cell == null) {
+                    continue;
+                }
+
+                for (int i = 0; i < cell.size; i++) {
+                    Player p = cell.get(i);
+                    float ox = p.x - x, oy = p.y - y;
+                    if (ox * ox + oy * oy <= r2) {
+                        out.add(p);
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    private Seq<Player> cell(int key) {
+        Seq<Player> cell = cells.get(key);
+        if (cell == null) {
+            cells.put(key, cell = new Seq<>(false, 8));
+        }
+        return cell;
+    }
+
+    private void removeFromCell(int key, Player player) {
+        Seq<Player> cell = cells.get(key);
+        if (cell != null) {
+            cell.remove(player, true);
+            if (cell.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    private int cellOf(float x, float y) {
+        return pack((int) Math.floor(x / cellSize), (int) Math.floor(y / cellSize));
+    }
+
+    private static int pack(int cx, int cy) {
+        return (cx << 16) | (cy & 0xffff);
+    }
+
+    static class Tracked {
+        public final Player player;
+        public int cell;
+
+        public Tracked(Player player, int cell) {
+            this.player = player;
+            this.cell = cell;
+        }
+    }
+}
@@ -1,17 +1,13 @@
 package sky;
 
 import arc.Events;
-import arc.files.Fi;
+import arc.func.Boolp;
 import arc.graphics.Color;
 import arc.math.Mathf;
+import arc.struct.ObjectMap;
 import arc.struct.Seq;
 import arc.util.*;
-import com.fasterxml.jackson.annotation.JsonAutoDetect;
-import com.fasterxml.jackson.annotation.PropertyAccessor;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.json.JsonMapper;
 import mindustry.Vars;
-import mindustry.content.Fx;
 import mindustry.entities.Effect;
 import mindustry.game.EventType;
 import mindustry.gen.Call;
@@ -19,149 +15,333 @@ import mindustry.gen.Groups;
 import mindustry.gen.Player;
 import mindustry.mod.Plugin;
 import mindustry.net.Administration;
+import mindustry.net.NetConnection;
+import mindustry.net.Packet;
+import mindustry.net.Packets;
+import sky.AuthorizationRegistry.AuthorizeEntry;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Loader extends Plugin {
 
-    private final Seq<Timer.Task> tasks = new Seq<>();
-    private final Seq<Tuple2<String, Effect>> effects = new Seq<>();
-    private final Seq<AuthorizeEntry> authorization = new Seq<>();
-    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
-    private final JsonMapper mapper = JsonMapper.builder()
-            .visibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY)
-            .visibility(PropertyAccessor.GETTER, JsonAutoDetect.Visibility.ANY)
-            .visibility(PropertyAccessor.CREATOR, JsonAutoDetect.Visibility.ANY)
-            .configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true)
-            .addMixIn(Color.class, SerializationSupport.ColorMixin.class)
-            .defaultPrettyPrinter(new SerializationSupport.CorrectPrettyPrinter())
-            .build();
+    /** Шарды конфигурации, у которых есть фоновые задачи. */
+    private static final String[] schedulerShards = {
+            "tips", "dynamicDays", "updateDesc", "updateChat", "autoGc", "advertisingBanner"
+    };
+    /** Отказ в допуске закрывается не сразу, чтобы пакет с причиной успел уйти клиенту. */
+    private static final long rejectCloseDelayMillis = 1000;
+
+    private final ObjectMap<String, Timer.Task> tasks = new ObjectMap<>(); // по имени шарда конфигурации
+    private final EffectRegistry effects = new EffectRegistry();
+    private final InterestGrid interestGrid = new InterestGrid(new Config.Effects().viewRadius);
+    private final Seq<Player> effectViewers = new Seq<>();
+    private final BroadcastCache broadcasts = new BroadcastCache();
+    private final MemoryManager memoryManager = new MemoryManager(256);
+    private final Metrics metrics = new Metrics();
+    private TickBudget budget;
+    private OutboundPacer pacer;
+    private AuditLog audit;
+    private final AuthorizationRegistry authorization = new AuthorizationRegistry();
+    private final DeadlineWheel deadlines = new DeadlineWheel(250, 512); // оборот колеса ~2 минуты
+    @Nullable
+    private AdmissionControl admission;
+    @Nullable
+    private TrustStore trust;
 
+    private final HubDirectory hubs = new HubDirectory();
+    private final Messages messages = new Messages();
+    private final ChatModeration moderation = new ChatModeration(metrics, messages, this::kick);
+    @Nullable
+    private SharedState shared;
+    private boolean applyingShared; // бан или разбан пришёл от соседа, его событие не публикуется обратно
+    private ScriptRunner scripts;
+    private ConfigWatcher configWatcher;
+    private ConfigSnapshot snapshot;
+    private Placeholders placeholders;
+    // поля ниже всегда переназначаются вместе со snapshot в игровом потоке
     private Config config;
+    private Template descTemplate;
+    private DayLighting lighting;
     @Nullable
     private String oldparameter;
+    private int oldlight; // rgba8888 последних разосланных правил
+    private boolean lightSent; // сбрасывается при смене настроек и карты
     private Config.Tips tips;
-    private int tipsIndex; // round-robin
+    private TipStore tipStore;
+    private final ObjectMap<String, Seq<Player>> audience = new ObjectMap<>(); // игроки по языку, переиспользуется
+    @Nullable
+    private BannerScheduler bannerScheduler;
 
     @Override
     public void init() {
 
-        try {
+        configWatcher = new ConfigWatcher(Vars.dataDirectory);
+        snapshot = configWatcher.load(); // не бросает, ошибки конфигурации только в логе
 
-            Fi configFi = Vars.dataDirectory.child("rcr-plugin.json");
-            if (configFi.exists()) {
-                config = mapper.readValue(configFi.readString(), Config.class);
-                Log.info("Config loaded");
-            } else {
-                String json = mapper.writerWithDefaultPrettyPrinter()
-                        .writeValueAsString(config = new Config());
+        config = snapshot.config();
+        tips = snapshot.tips();
+        tipStore = snapshot.tipStore();
 
-                configFi.writeString(json);
-                Log.info("Config created (@)", configFi.absolutePath());
-            }
+        Log.debug("Configuration : @", config);
+        Log.debug("Tips          : @", tips);
 
-            Fi tipsFi = Vars.dataDirectory.child("rcr-tips.json");
-            if (tipsFi.exists()) {
-                tips = mapper.readValue(tipsFi.readString(), Config.Tips.class);
-                Log.info("@ tips loaded", tips.tips.size());
-            } else {
-                String json = mapper.writerWithDefaultPrettyPrinter()
-                        .writeValueAsString(tips = new Config.Tips());
+        loadMessages();
 
-                tipsFi.writeString(json);
-                Log.info("Tips configuration created (@)", tipsFi.absolutePath());
-            }
-        } catch (Throwable t) {
-            throw new RuntimeException(t);
+        budget = new TickBudget(config.loadShedding, metrics);
+        // первым слушателем, чтобы тик закрывался до работы остальных
+        Events.run(EventType.Trigger.update, budget::tick);
+
+        // очередь сообщений не откладывается бюджетом: в ней и напоминания о капче
+        pacer = new OutboundPacer(config.pacing, metrics);
+        Events.run(EventType.Trigger.update, metrics.wrap("update.pacer", () -> pacer.flush(Time.millis())));
+        Events.on(EventType.PlayerLeave.class, metrics.wrap("leave.pacer", event -> pacer.remove(event.player)));
+
+        audit = new AuditLog(dataPath(config.audit.directory), config.audit, metrics);
+
+        scripts = new ScriptRunner(config.scripts);
+        if (config.shared.enabled) {
+            openShared();
         }
 
-        Log.debug("Configuration : @", config);
-        Log.debug("Tips          : @", tips);
+        placeholders = new Placeholders(new DayPeriods(config.dynamicDays.timeParameters, messages));
+        placeholders.register("network", out -> out.append(shared == null ? Groups.player.size() :
+                shared.networkOnline(Groups.player.size(), Time.millis())));
+        lighting = new DayLighting(placeholders.periods(), config.dynamicDays.lightingParameters, config.dynamicDays.stepsPerPeriod);
+        descTemplate = placeholders.compile(config.updateDesc.desc);
+        broadcasts.rebuild(config, placeholders);
+        rebuildModeration();
+        // правила новой карты заменяют освещение, даже если в них уже lighting=true
+        Events.on(EventType.WorldLoadEvent.class, metrics.wrap("world.lighting", event -> lightSent = false));
+
+        Events.run(EventType.Trigger.update, metrics.wrap("update.effects", budget.wrap(TickBudget.Priority.low, () -> {
+            if (effects.isEmpty()) {
+                return;
+            }
 
-        Events.run(EventType.Trigger.update, () -> {
-            for (Player player : Groups.player) {
-                if (!player.unit().moving()) continue;
-                var pair = effects.find(t -> t.t1.equals(player.uuid()));
-                if (pair != null) {
-                    Call.effect(pair.t2, player.x, player.y, 0, Color.white);
+            long now = Time.millis();
+            interestGrid.update(Groups.player, config.effects.viewRadius);
+            for (var entry : effects.entries()) {
+                Player player = entry.player;
+                if (player.unit().moving() && entry.shouldEmit(now, config.effects)) {
+                    entry.emitted(now);
+                    sendEffect(entry.effect, player.x, player.y);
+                }
+            }
+        })));
+
+        Events.on(EventType.PlayerLeave.class, metrics.wrap("leave.effects", event -> {
+            effects.remove(event.player);
+            interestGrid.remove(event.player);
+        }));
+
+        // один фильтр на авторизацию и модерацию; без авторизации реестр просто пуст
+        Metrics.Probe chatProbe = metrics.probe("filter.chat");
+        Vars.netServer.admins.addChatFilter((player, message) -> {
+            long start = System.nanoTime();
+            try {
+                if (authorization.contains(player)) {
+                    return null;
                 }
+                if (!config.moderation.enabled || player.admin) {
+                    return message;
+                }
+                return moderation.filter(player, message, Time.millis());
+            } finally {
+                chatProbe.record(start);
             }
         });
 
-        Events.on(EventType.PlayerLeave.class, event -> effects.remove(t -> t.t1.equals(event.player.uuid())));
+        Events.on(EventType.PlayerLeave.class, metrics.wrap("leave.moderation", event -> moderation.remove(event.player)));
 
         if (config.authorization.enabled) {
-            Vars.netServer.admins.addActionFilter(action -> action.player != null &&
-                    !authorization.contains(a -> a.uuid.equals(action.player.uuid())));
-
-            Vars.netServer.admins.addChatFilter((player, message) -> {
-                if (authorization.contains(a -> a.uuid.equals(player.uuid()))) {
-                    return null;
+            Metrics.Probe actionProbe = metrics.probe("filter.action");
+            Vars.netServer.admins.addActionFilter(action -> {
+                long start = System.nanoTime();
+                try {
+                    return action.player != null && !authorization.contains(action.player);
+                } finally {
+                    actionProbe.record(start);
                 }
-                return message;
             });
 
-            Events.on(EventType.PlayerLeave.class, event -> authorization.remove(a -> a.uuid.equals(event.player.uuid())));
+            Events.on(EventType.PlayerLeave.class, metrics.wrap("leave.authorization", event -> authorization.remove(event.player)));
 
-            Events.on(EventType.PlayerConnect.class, event -> {
+            Events.on(EventType.PlayerConnect.class, metrics.wrap("connect.admin", event -> {
                 String uuid = event.player.uuid();
                 Administration.PlayerInfo playerInfo = Vars.netServer.admins.getInfo(uuid);
                 if (playerInfo.admin) {
                     Vars.netServer.admins.adminPlayer(uuid, event.player.usid());
                     event.player.admin = true;
                 }
-            });
+            }));
 
-            Events.on(EventType.PlayerConnect.class, event -> {
-                if (!authorization.contains(a -> a.uuid.equals(event.player.uuid())) && !event.player.admin) {
-
-                    AuthorizeEntry authorizeEntry = new AuthorizeEntry(event.player.uuid(), Mathf.random(9999));
-                    event.player.sendMessage("[gold]Ваш код [white]'[pink]" + authorizeEntry.code +
-                            "[white]' # [gold]Пропишите команду [blue]/cch [white]<[pink]ваш код[white]> [gold]для того чтобы начать играть.");
-                    authorization.add(authorizeEntry);
-                    Timer.schedule(() -> {
-                        Player player = Groups.player.find(p -> p.uuid().equals(authorizeEntry.uuid));
-                        if (authorization.contains(authorizeEntry) && player != null) {
-                            player.kick(config.authorization.kickMessage, config.authorization.kickDurationMillis);
-                        }
-                    }, config.authorization.timeoutMillis / 1000f);
-                }
-            });
+            admission = new AdmissionControl(config.authorization, metrics);
+            try {
+                trust = TrustStore.open(Vars.dataDirectory.child(TrustStore.fileName), config.authorization.trustCapacity);
+            } catch (IOException e) {
+                Log.err("Unable to open trust store, returning players will have to enter the code again");
+                Log.err(e);
+            }
+
+            LongAdder trusted = metrics.counter("authorization.trusted");
+            Events.on(EventType.PlayerConnect.class, metrics.wrap("connect.authorization", event -> {
+                if (!authorization.contains(event.player) && !event.player.admin) {
+                    long now = Time.millis();
+                    if (trust != null && config.authorization.trustTtlMillis > 0 &&
+                            trust.contains(event.player.uuid(), event.player.con.address, now)) {
+                        trusted.increment();
+                        audit.record(AuditLog.Kind.trusted, event.player, "");
+                        return;
+                    }
+
+                    AdmissionControl.Verdict verdict = admission.admit(event.player.con, authorization.size(), now);
+                    if (verdict != AdmissionControl.Verdict.admit) {
+                        audit.record(AuditLog.Kind.rejected, event.player, verdict.name());
+                        // без NetConnection#kick: тот пишет в лог и сохраняет админку на каждый отказ.
+                        // Клиент, получив причину, отключается сам, закрытие по таймеру только на случай если нет
+                        NetConnection con = event.player.con;
+                        Call.kick(con, config.authorization.rejectMessage);
+                        con.kicked = true;
+                        deadlines.schedule(con::close, now, rejectCloseDelayMillis);
+                        return;
+                    }
 
-            Events.run(EventType.Trigger.update, () -> {
-                for (AuthorizeEntry a : authorization) {
-                    Groups.player.each(p -> p.uuid().equals(a.uuid) && Time.timeSinceMillis(a.lastRememberTime) > 15000, p -> { // 15 секунд
-                        a.lastRememberTime = Time.millis();
-                        p.sendMessage("[gold]Ваш код [white]'[pink]" + a.code +
-                                "[white]' # [gold]Пропишите команду [blue]/cch [white]<[pink]ваш код[white]> [gold]для того чтобы начать играть.");
-                    });
+                    AuthorizeEntry authorizeEntry = authorization.add(event.player, Mathf.random(9999));
+                    audit.record(AuditLog.Kind.captchaIssued, event.player, "");
+                    // код и язык игрока не меняются, напоминание собирается один раз
+                    remindCode(authorizeEntry, BroadcastCache.message(
+                            messages.format("captcha.reminder", event.player.locale, authorizeEntry.code)));
+                    // дедлайны отменяются при удалении записи из реестра (успешный /cch или PlayerLeave)
+                    authorizeEntry.kick = deadlines.schedule(() -> {
+                        authorization.remove(authorizeEntry);
+                        audit.record(AuditLog.Kind.captchaTimeout, authorizeEntry.player, "");
+                        kick(authorizeEntry.player, config.authorization.kickMessage, config.authorization.kickDurationMillis);
+                    }, now, config.authorization.timeoutMillis);
                 }
-            });
+            }));
+
+            // кики и напоминания не откладываются бюджетом
+            Events.run(EventType.Trigger.update, metrics.wrap("update.deadlines", () -> deadlines.advance(Time.millis())));
         }
 
-        Events.on(EventType.PlayerConnect.class, event -> {
-            if (!config.advertisingBanner.enabled) {
+        Events.on(EventType.PlayerConnect.class, metrics.wrap("connect.banners", event -> {
+            if (!config.advertisingBanner.enabled || !event.player.con.isConnected()) {
                 return;
             }
 
             if (config.advertisingBanner.mode == Config.Mode.queue) {
-                Timer.schedule(new BannerDisplayer(event.player.uuid()), 3);
-            } else {
-                for (var b : config.advertisingBanner.banners) {
-                    float ttl = b.timeLife == -1 ? Float.MAX_VALUE : b.timeLife;
-                    if (b instanceof Config.WorldBanner w) {
-                        Call.label(event.player.con, w.text, ttl, w.x * Vars.tilesize, w.y * Vars.tilesize);
-                    } else if (b instanceof Config.ScreenBanner s) {
-                        Call.infoPopup(event.player.con, s.text, ttl, s.align, s.top, s.left, s.bottom, s.right);
-                    } else {
-                        throw new IllegalStateException();
+                if (bannerScheduler != null) {
+                    bannerScheduler.join(event.player);
+                }
+            } else if (budget.admit(TickBudget.Priority.low)) {
+                long now = Time.millis();
+                for (int i = 0; i < broadcasts.allBanners.length; i++) {
+                    pacer.send(event.player, "banner." + i, broadcasts.allBanners[i], now, config.pacing.maxDelayMillis);
+                }
+            }
+        }));
+
+        Events.on(EventType.PlayerLeave.class, metrics.wrap("leave.banners", event -> {
+            if (bannerScheduler != null) {
+                bannerScheduler.leave(event.player);
+            }
+        }));
+
+        if (shared != null) {
+            Events.on(EventType.PlayerBanEvent.class, event -> {
+                if (config.shared.shareBans && !applyingShared) {
+                    shared.publish(SharedState.Kind.ban, event.uuid, "", "", 0);
+                }
+            });
+            Events.on(EventType.PlayerUnbanEvent.class, event -> {
+                if (config.shared.shareBans && !applyingShared) {
+                    shared.publish(SharedState.Kind.unban, event.uuid, "", "", 0);
+                }
+            });
+
+            // онлайн соседей нужен /hub, а свой читают соседи
+            Timer.schedule(metrics.wrap("task.shared", () -> {
+                shared.setOnline(Groups.player.size());
+                long now = Time.millis();
+                for (var peer : shared.peers()) {
+                    if (peer.alive(now, config.shared.peerTimeoutMillis)) {
+                        hubs.local(peer.port(), peer.online());
                     }
                 }
+            }), 0f, 1f);
+            shared.start(this::onShared);
+        }
+
+        metrics.serve(config.metrics);
+        hubs.configure(config.common);
+        bootstrapSchedulers();
+        configWatcher.watch(this::applySnapshot);
+    }
+
+    @Override
+    public void registerServerCommands(CommandHandler handler) {
+        handler.register("memory", "Heap usage, GC counts and pause percentiles.", args -> memoryManager.report());
+
+        handler.register("hubs", "Hub endpoints with cached health, ping and load.", args -> {
+            if (hubs.isEmpty()) {
+                Log.info("No hubs configured");
+            }
+            for (var hub : hubs.endpoints()) {
+                Log.info("@: @, ping @ ms, players @/@, checked @ s ago", hub, hub.healthy() ? "up" : "down",
+                        hub.ping, hub.players, hub.playerLimit, hub.checkedAt == 0 ? "-" : Time.timeSinceMillis(hub.checkedAt) / 1000);
             }
         });
 
-        bootstrapSchedulers();
+        handler.register("announce", "<text...>", "Send a message to this server and all servers sharing state with it.", args -> {
+            pacer.broadcast("announce", BroadcastCache.message("[scarlet][[Server]:[] " + args[0]), Time.millis(), config.pacing.maxDelayMillis);
+            if (shared != null) {
+                shared.publish(SharedState.Kind.announce, "", "", args[0], 0);
+            }
+            Log.info("Announced@", shared == null ? " locally, shared state is disabled" : "");
+        });
+
+        handler.register("peers", "Servers found in the shared state directory.", args -> {
+            if (shared == null) {
+                Log.info("Shared state is disabled");
+                return;
+            }
+
+            long now = Time.millis();
+            Log.info("This server is '@'", shared.instance());
+            for (var peer : shared.peers()) {
+                Log.info("@: @, port @, players @, heartbeat @ ms ago", peer.name,
+                        peer.alive(now, config.shared.peerTimeoutMillis) ? "up" : "down", peer.port(), peer.online(), now - peer.heartbeat());
+            }
+        });
+
+        handler.register("audit", "<uuid> [limit]", "Recent audit events of a player, newest last.", args -> {
+            if (args.length > 1 && !Strings.canParsePositiveInt(args[1])) {
+                Log.err("Limit must be a positive number");
+                return;
+            }
+            audit.query(args[0], args.length > 1 ? Strings.parseInt(args[1]) : 20);
+        });
+
+        handler.register("messages", "[reload]", "Loaded message translations, or reload them from the bundles directory.", args -> {
+            if (args.length > 0 && args[0].equalsIgnoreCase("reload")) {
+                loadMessages();
+                placeholders.setPeriods(new DayPeriods(config.dynamicDays.timeParameters, messages));
+            }
+            Log.info("Messages: @ keys, translations @", messages.size(), messages.languages());
+        });
+
+        handler.register("metrics", "[reset]", "Plugin hook call counts and latencies.", args -> {
+            if (args.length > 0 && args[0].equalsIgnoreCase("reset")) {
+                metrics.reset();
+                Log.info("Metrics reset");
+            } else {
+                metrics.report();
+            }
+        });
     }
 
     @Override
@@ -169,35 +349,51 @@ public class Loader extends Plugin {
 
         handler.<Player>register("js", "<code...>", "Execute JavaScript code.", (args, player) -> {
             if (player.admin) {
-                String output = Vars.mods.getScripts().runConsole(args[0]);
-                player.sendMessage("[white]> " + (isError(output) ? "[#ff341c]" + output : output));
+                audit.record(AuditLog.Kind.js, player, args[0]);
+                sendScriptResult(player, scripts.run(args[0]));
             } else {
-                player.sendMessage("[scarlet]You must be admin to use this command.");
+                messages.send(player, "admin.required");
             }
         });
 
+        handler.<Player>register("jsq", "<code...>", "Query a snapshot of the world (state, players, teams) with JavaScript in the background.", (args, player) -> {
+            if (!player.admin) {
+                messages.send(player, "admin.required");
+                return;
+            }
+
+            if (!scripts.query(args[0], result -> sendScriptResult(player, result))) {
+                messages.send(player, "script.busy");
+                return;
+            }
+            audit.record(AuditLog.Kind.jsq, player, args[0]);
+        });
+
         handler.<Player>register("effect", "[off/effectname]", "Включить эффекты движения.", (args, player) -> {
             if (!player.admin) {
-                player.sendMessage("[scarlet]Ты должен быть админом чтобы использовать эту команду.");
+                messages.send(player, "admin.required");
+                return;
+            }
+
+            if (args.length == 0) {
+                messages.send(player, "effect.usage");
                 return;
             }
 
+            audit.record(AuditLog.Kind.effect, player, args[0]);
             if (args[0].equalsIgnoreCase("off")) {
-                effects.remove(t -> t.t1.equals(player.uuid()));
-                player.sendMessage("[accent]Эффекты выключены");
+                effects.remove(player);
+                messages.send(player, "effect.off");
                 return;
             }
 
-            Effect fx;
-            try {
-                fx = Reflect.get(Fx.class, args[0]);
-            } catch (Throwable t) {
-                player.sendMessage("[scarlet]Эффект не найден.");
+            Effect fx = EffectRegistry.resolve(args[0]);
+            if (fx == null) {
+                messages.send(player, "effect.unknown");
                 return;
             }
 
-            effects.remove(t -> t.t1.equals(player.uuid())); // потому что иммутабельны
-            effects.add(new Tuple2<>(player.uuid(), fx));
+            effects.put(player, fx);
         });
 
         if (config.authorization.enabled) {
@@ -205,173 +401,399 @@ public class Loader extends Plugin {
             handler.removeCommand(votekick.text);
             CommandHandler.CommandRunner<Player> votekickRunner = Reflect.get(votekick, "runner");
             handler.<Player>register(votekick.text, votekick.paramText, votekick.description, (args, player) -> {
-                if (!authorization.contains(a -> a.uuid.equals(player.uuid()))) {
+                if (!authorization.contains(player)) {
                     votekickRunner.accept(args, player);
                 }
             });
 
             handler.<Player>register("cch", "<code>", "Пройти авторизацию.", (args, player) -> {
-                AuthorizeEntry authorizeEntry = authorization.find(a -> a.uuid.equals(player.uuid()));
+                AuthorizeEntry authorizeEntry = authorization.get(player);
                 if (authorizeEntry == null) {
-                    player.sendMessage("[scarlet]Вам не требуется проходить авторизацию");
+                    messages.send(player, "captcha.notRequired");
                     return;
                 }
 
                 if (!Strings.canParseInt(args[0]) || Strings.parseInt(args[0]) != authorizeEntry.code) {
-                    player.kick("[scarlet]Не правильно введён код (подозрение что вы бот)", 3_600_000); // 1 час
+                    audit.record(AuditLog.Kind.captchaFailed, player, args[0]);
+                    kick(player, messages.get("captcha.wrong", player.locale), 3_600_000L); // 1 час
                     return;
                 }
 
-                player.sendMessage("[accent]Вы успешно авторизовались.");
+                messages.send(player, "captcha.passed");
+                audit.record(AuditLog.Kind.captchaPassed, player, "");
                 authorization.remove(authorizeEntry);
+                pacer.cancel(player, "captcha"); // напоминание могло ещё стоять в очереди
+                if (trust != null && config.authorization.trustTtlMillis > 0) {
+                    long now = Time.millis(), expiresAt = now + config.authorization.trustTtlMillis;
+                    trust.add(player.uuid(), player.con.address, expiresAt, now);
+                    if (shared != null && config.shared.shareVerified) {
+                        shared.publish(SharedState.Kind.verified, player.uuid(), player.con.address, "", expiresAt);
+                    }
+                }
             });
         }
 
-        if (config.common.hubAddress != null) {
+        if (!hubs.isEmpty()) {
             handler.<Player>register("hub", "Выйти в лобби.", (args, player) -> {
-                String address = config.common.hubAddress;
-                int port = Vars.port;
-                if (address.contains(":")) {
-                    String[] parts = address.split(":");
-                    address = parts[0];
-                    port = Integer.parseInt(parts[1]);
+                HubDirectory.Endpoint hub = hubs.route();
+                if (hub == null) {
+                    messages.send(player, "hub.offline");
+                    return;
                 }
 
-                Vars.net.pingHost(address, port, host -> {
-                    Call.connect(player.con, host.address, host.port);
-                    Log.info("&lb@&fi&lk has reconnected to the hub. &fi&lk[&lb@&fi&lk]", player.name, player.uuid());
-                }, e -> {
-                    player.sendMessage("[scarlet]Server currently is offline!");
-                    Log.err(e);
-                });
+                Call.connect(player.con, hub.address, hub.port);
+                audit.record(AuditLog.Kind.hub, player, hub.toString());
+                Log.info("&lb@&fi&lk has reconnected to the hub @. &fi&lk[&lb@&fi&lk]", player.name, hub, player.uuid());
             });
         }
     }
 
-    private boolean isError(String output) {
-        try {
-            String errorName = output.substring(0, output.indexOf(' ') - 1);
-            Class.forName("org.mozilla.javascript." + errorName);
-            return true;
-        } catch (Throwable e) {
-            return false;
+    private void sendEffect(Effect effect, float x, float y) {
+        var viewers = interestGrid.query(x, y, config.effects.viewRadius, effectViewers);
+        // когда эффект видит большая часть сервера, один широковещательный вызов дешевле адресных
+        if (viewers.size > Groups.player.size() * config.effects.broadcastRatio) {
+            Call.effect(effect, x, y, 0, Color.white);
+            return;
+        }
+
+        for (int i = 0; i < viewers.size; i++) {
+            Player viewer = viewers.get(i);
+            if (viewer.con != null) {
+                Call.effect(viewer.con, effect, x, y, 0, Color.white);
+            }
         }
     }
 
-    private void bootstrapSchedulers() {
+    private void remindCode(AuthorizeEntry entry, Packet reminder) {
+        // следующее напоминание заменит неотправленное
+        pacer.send(entry.player, "captcha", reminder, Time.millis(), config.authorization.reminderIntervalMillis);
+        entry.reminder = deadlines.schedule(() -> remindCode(entry, reminder), Time.millis(), config.authorization.reminderIntervalMillis);
+    }
 
-        if (tips.enabled) {
-            tasks.add(Timer.schedule(() -> {
-                if (tipsIndex >= tips.tips.size()) {
-                    tipsIndex = 0;
-                }
+    /** Кик с длительностью, который при общем состоянии получают и другие серверы. */
+    private void kick(Player player, String reason, long durationMillis) {
+        audit.record(AuditLog.Kind.kick, player, reason + " (" + durationMillis / 1000 + " s)");
+        player.kick(reason, durationMillis);
+        if (shared != null && config.shared.shareKicks && durationMillis > 0) {
+            shared.publish(SharedState.Kind.kick, player.uuid(), player.con.address, reason, durationMillis);
+        }
+    }
+
+    /** Путь из конфигурации, относительный считается от папки config. */
+    private static Path dataPath(String path) {
+        Path result = Path.of(path);
+        return result.isAbsolute() ? result : Vars.dataDirectory.file().toPath().resolve(result).normalize();
+    }
 
-                Call.sendMessage(tips.tips.get(tipsIndex++));
-            }, tips.tipsShowInterval / 1000f, tips.tipsShowInterval / 1000f)); // 2 минуты
+    private void openShared() {
+        Path directory = dataPath(config.shared.directory);
+        String instance = config.shared.instance.isEmpty() ? String.valueOf(Administration.Config.port.num()) : config.shared.instance;
+        try {
+            shared = SharedState.open(directory, instance, Administration.Config.port.num(), config.shared, metrics);
+            Log.info("Shared state: '@' in @", instance, directory);
+        } catch (IOException e) {
+            Log.err("Unable to open shared state, this server will run isolated");
+            Log.err(e);
         }
+    }
 
-        if (config.dynamicDays.enabled) {
-            tasks.add(Timer.schedule(() -> {
-                Vars.state.rules.lighting = true;
-                String parameter = getTimeParameter();
-                if (!parameter.equals(oldparameter)) {
-                    switch (parameter) {
-                        case "morning" -> Call.sendMessage("[scarlet][[Server]:[] [white]На сервере наступает [yellow]утро[white]...");
-                        case "day" -> Call.sendMessage("[scarlet][[Server]:[] [white]На сервере наступает [orange]день[white]...");
-                        case "evening" -> Call.sendMessage("[scarlet][[Server]:[] [white]На сервере наступает [gray]вечер[white]...");
-                        case "night" -> Call.sendMessage("[scarlet][[Server]:[] [white]На сервере наступает [blue]ночь[white]...");
+    /** Событие другого сервера, в игровом потоке. */
+    private void onShared(SharedState.Event event) {
+        switch (event.kind()) {
+            case verified -> {
+                if (trust != null && config.shared.shareVerified) {
+                    trust.add(event.uuid(), event.address(), event.value(), Time.millis());
+                }
+            }
+            case announce -> pacer.broadcast("announce", BroadcastCache.message("[scarlet][[" + event.source() + "]:[] " + event.text()),
+                    Time.millis(), config.pacing.maxDelayMillis);
+            // применённые бан и разбан не публикуются обратно, иначе пара бан+разбан ходила бы между серверами по кругу
+            case ban -> {
+                if (config.shared.shareBans && applyShared(() -> Vars.netServer.admins.banPlayerID(event.uuid()))) {
+                    Player player = Groups.player.find(p -> p.uuid().equals(event.uuid()));
+                    if (player != null) {
+                        player.kick(Packets.KickReason.banned);
                     }
-
-                    oldparameter = parameter;
-                    Vars.state.rules.ambientLight = config.dynamicDays.lightingParameters.get(parameter);
+                    audit.record(AuditLog.Kind.shared, event.uuid(), "", "", "ban from " + event.source());
+                    Log.info("Banned @ following server '@'", event.uuid(), event.source());
+                }
+            }
+            case unban -> {
+                if (config.shared.shareBans && applyShared(() -> Vars.netServer.admins.unbanPlayerID(event.uuid()))) {
+                    Log.info("Unbanned @ following server '@'", event.uuid(), event.source());
+                }
+            }
+            case kick -> {
+                if (!config.shared.shareKicks) {
+                    return;
+                }
+                audit.record(AuditLog.Kind.shared, event.uuid(), event.address(), "",
+                        "kick from " + event.source() + ": " + event.text() + " (" + event.value() / 1000 + " s)");
+                Player player = Groups.player.find(p -> p.uuid().equals(event.uuid()));
+                if (player != null) {
+                    player.kick(event.text(), event.value());
+                } else {
+                    Vars.netServer.admins.handleKicked(event.uuid(), event.address(), event.value());
                 }
-            }, 0f, config.dynamicDays.updateInterval / 1000f));
+            }
         }
+    }
 
-        if (config.updateDesc.enabled) {
-            tasks.add(Timer.schedule(() -> Administration.Config.desc.set(formatDesc(getTimeParameter())),
-                    0f, config.updateDesc.updateInterval / 1000f));
+    /** Действие над банами по событию соседа, без повторной публикации его событий. */
+    private boolean applyShared(Boolp action) {
+        applyingShared = true;
+        try {
+            return action.get();
+        } finally {
+            applyingShared = false;
         }
+    }
 
-        if (config.updateChat.enabled) {
-            tasks.add(Timer.schedule(() -> Call.sendMessage(config.updateChat.chat),
-                    0f, config.updateChat.updateInterval / 1000f));
+    /** Игроки онлайн по языку клиента; пустые группы остаются в карте для переиспользования. */
+    private ObjectMap<String, Seq<Player>> audience() {
+        for (var players : audience.values()) {
+            players.clear();
         }
-
-        if (config.autoGc.enabled) {
-            tasks.add(Timer.schedule(System::gc, 0f, config.autoGc.updateInterval / 1000f));
+        for (Player player : Groups.player) {
+            String language = Messages.language(player.locale);
+            Seq<Player> players = audience.get(language);
+            if (players == null) {
+                audience.put(language, players = new Seq<>());
+            }
+            players.add(player);
         }
+        return audience;
     }
 
-    private String getTimeParameter() {
-        LocalDateTime dateTime = LocalDateTime.now();
-        for (var parameter : config.dynamicDays.timeParameters.entrySet()) {
-            if (parameter.getValue().contains(dateTime.getHour())) {
-                return parameter.getKey();
+    private void loadMessages() {
+        try {
+            messages.load(Vars.dataDirectory);
+        } catch (IOException e) {
+            Log.err("Unable to load messages from @, using the built-in ones", Vars.dataDirectory.child(Messages.directory));
+            Log.err(e);
+            try {
+                messages.load(null);
+            } catch (IOException builtIn) {
+                throw new UncheckedIOException(builtIn);
             }
         }
-        throw new IllegalStateException("Incorrect time parameter!");
+        Log.debug("Messages: @ keys, translations @", messages.size(), messages.languages());
+    }
+
+    private static void sendScriptResult(Player player, ScriptRunner.Result result) {
+        if (player.con != null && player.con.isConnected()) {
+            player.sendMessage("[white]> " + (result.error() ? "[#ff341c]" + result.output() : result.output()));
+        }
     }
 
-    private String formatDesc(String status) {
-        return config.updateDesc.desc.replace("%localtime%", LocalDateTime.now().format(formatter))
-                .replace("%status%", localize(status));
+    private void rebuildModeration() {
+        String[] words = ChatModeration.words(config.moderation, Vars.dataDirectory);
+        moderation.configure(config.moderation, WordFilter.compile(words));
+        Log.debug("Chat moderation: @ banned words", words.length);
     }
 
-    private String localize(String status) {
-        return switch (status) {
-            case "morning" -> "утро";
-            case "day" -> "день";
-            case "evening" -> "вечер";
-            case "night" -> "ночь";
-            default -> throw new IllegalArgumentException("Incorrect status!");
-        };
+    private void bootstrapSchedulers() {
+        for (String shard : schedulerShards) {
+            rebind(shard);
+        }
     }
 
-    static class AuthorizeEntry {
-        public final String uuid;
-        public final int code;
+    /** Вызывается в игровом потоке, когда {@link ConfigWatcher} опубликовал новый снимок. */
+    private void applySnapshot(ConfigSnapshot next) {
+        Set<String> changed = configWatcher.diff(snapshot, next);
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        snapshot = next;
+        config = next.config();
+        tips = next.tips();
+        tipStore = next.tipStore();
+        Log.info("Changed configuration shards: @", changed);
+
+        if (changed.contains("authorization") || changed.contains("common")) {
+            // фильтры и команды регистрируются один раз, поэтому их включение/выключение требует перезапуска
+            Log.warn("Changes of 'authorization.enabled', 'authorization.admissionTableSize', 'authorization.trustCapacity' and adding the first hub take effect after restart");
+        }
+
+        if (changed.contains("shared")) {
+            // флаги share* применяются сразу, файл кольца открывается один раз
+            Log.warn("Changes of 'shared.enabled', 'shared.directory', 'shared.instance', 'shared.capacity' and intervals take effect after restart");
+        }
+
+        if (changed.contains("audit")) {
+            Log.warn("Changes of 'audit.directory' take effect after restart");
+        }
+
+        if (changed.contains("authorization") && admission != null) {
+            admission.setConfig(config.authorization);
+        }
+
+        if (changed.contains("common")) {
+            hubs.configure(config.common);
+        }
+
+        if (changed.contains("moderation")) {
+            rebuildModeration();
+        }
+
+        if (changed.contains("scripts")) {
+            scripts.setConfig(config.scripts);
+        }
+
+        if (changed.contains("audit")) {
+            audit.setConfig(config.audit);
+        }
+
+        if (changed.contains("pacing")) {
+            pacer.setConfig(config.pacing);
+        }
+
+        if (changed.contains("loadShedding")) {
+            budget.setConfig(config.loadShedding);
+        }
+
+        if (changed.contains("metrics")) {
+            metrics.serve(config.metrics);
+        }
+
+        if (changed.contains("dynamicDays")) {
+            placeholders.setPeriods(new DayPeriods(config.dynamicDays.timeParameters, messages));
+            lighting = new DayLighting(placeholders.periods(), config.dynamicDays.lightingParameters, config.dynamicDays.stepsPerPeriod);
+        }
+
+        if (changed.contains("updateDesc")) {
+            descTemplate = placeholders.compile(config.updateDesc.desc);
+        }
 
-        public long lastRememberTime = Time.millis();
+        if (changed.contains("updateChat") || changed.contains("advertisingBanner")) {
+            broadcasts.rebuild(config, placeholders);
+        }
 
-        public AuthorizeEntry(String uuid, int code) {
-            this.uuid = uuid;
-            this.code = code;
+        for (String shard : schedulerShards) {
+            if (changed.contains(shard)) {
+                rebind(shard);
+            }
         }
     }
 
-    class BannerDisplayer extends Timer.Task {
-        public final String uuid;
+    /** Отменяет задачу шарда (если была) и планирует её заново по текущей конфигурации. */
+    private void rebind(String shard) {
+        Timer.Task old = tasks.remove(shard);
+        if (old != null) {
+            old.cancel();
+        }
 
-        public int idx;
+        Timer.Task task = switch (shard) {
+            case "tips" -> scheduleTips();
+            case "dynamicDays" -> scheduleDynamicDays();
+            case "updateDesc" -> !config.updateDesc.enabled ? null :
+                    Timer.schedule(metrics.wrap("task.updateDesc", budget.wrap(TickBudget.Priority.normal,
+                            () -> Administration.Config.desc.set(descTemplate.render()))), 0f, config.updateDesc.updateInterval / 1000f);
+            case "updateChat" -> !config.updateChat.enabled ? null :
+                    Timer.schedule(metrics.wrap("task.updateChat", budget.wrap(TickBudget.Priority.low,
+                            () -> pacer.broadcast("chat", broadcasts.chat.packet(), Time.millis(), config.updateChat.updateInterval))),
+                            0f, config.updateChat.updateInterval / 1000f);
+            case "autoGc" -> memoryManager.schedule(config.autoGc, metrics.probe("task.autoGc"));
+            case "advertisingBanner" -> {
+                rebindBanners();
+                yield null;
+            }
+            default -> throw new IllegalArgumentException("Unknown shard: " + shard);
+        };
 
-        public BannerDisplayer(String uuid) {
-            this.uuid = uuid;
+        if (task != null) {
+            tasks.put(shard, task);
         }
+    }
 
-        @Override
-        public void run() {
-            Player player = Groups.player.find(p -> p.uuid().equals(uuid));
-            if (player == null) {
+    @Nullable
+    private Timer.Task scheduleTips() {
+        if (!tips.enabled) {
+            return null;
+        }
+
+        // пропущенная подсказка не теряется, выборка сдвигается только при показе
+        return Timer.schedule(metrics.wrap("task.tips", budget.wrap(TickBudget.Priority.low, () -> {
+            if (tipStore.size() == 0 || Groups.player.isEmpty()) {
                 return;
             }
 
-            if (idx >= config.advertisingBanner.banners.size()) {
-                idx = 0;
-            }
+            // одна подсказка на язык, шаблон собирается при первом показе и берётся из TipStore
+            String map = Vars.state.map == null ? "" : Vars.state.map.plainName();
+            String mode = Vars.state.rules.mode().name();
+            long now = Time.millis();
+            for (var entry : audience()) {
+                if (entry.value.isEmpty()) {
+                    continue;
+                }
 
-            Config.Banner b = config.advertisingBanner.banners.get(idx++);
-            if (b instanceof Config.WorldBanner w) {
-                Call.label(player.con, w.text, w.timeLife, w.x * Vars.tilesize, w.y * Vars.tilesize);
-            } else if (b instanceof Config.ScreenBanner s) {
-                Call.infoPopup(player.con, s.text, s.timeLife, s.align, s.top, s.left, s.bottom, s.right);
-            } else {
-                throw new IllegalStateException();
+                int tip = tipStore.next(entry.key, tips.defaultLocale, map, mode, tips.selection == Config.TipSelection.weighted);
+                if (tip < 0) {
+                    continue;
+                }
+
+                Packet packet = BroadcastCache.message(tipStore.template(tip, placeholders).render());
+                for (Player player : entry.value) {
+                    pacer.send(player, "tip", packet, now, tips.tipsShowInterval);
+                }
             }
+        })), tips.tipsShowInterval / 1000f, tips.tipsShowInterval / 1000f); // 2 минуты
+    }
 
-            Timer.schedule(this, b.timeLife);
+    @Nullable
+    private Timer.Task scheduleDynamicDays() {
+        if (!config.dynamicDays.enabled) {
+            return null;
         }
+
+        oldparameter = null; // при смене настроек освещение применяется заново
+        lightSent = false;
+        return Timer.schedule(metrics.wrap("task.dynamicDays", budget.wrap(TickBudget.Priority.normal, () -> {
+            int minute = DayPeriods.minuteOfDay();
+            String parameter = placeholders.periods().at(minute / 60);
+            if (!parameter.equals(oldparameter)) {
+                // пакет объявления кешируется в каталоге, на каждый язык кодируется один раз
+                long now = Time.millis();
+                String key = "days." + parameter;
+                for (var entry : audience()) {
+                    if (entry.value.isEmpty() || messages.get(key, entry.key, null) == null) {
+                        continue; // для своих периодов объявления нет
+                    }
+                    Packet packet = messages.packet(key, entry.key);
+                    for (Player player : entry.value) {
+                        pacer.send(player, "days", packet, now, config.pacing.maxDelayMillis);
+                    }
+                }
+
+                oldparameter = parameter;
+            }
+
+            // правила рассылаются целиком, поэтому только на смене ступени DayLighting;
+            // подключающиеся получают текущие правила вместе с миром
+            int light = lighting.at(minute);
+            if (!lightSent || light != oldlight || !Vars.state.rules.lighting) {
+                Vars.state.rules.lighting = true;
+                Vars.state.rules.ambientLight.rgba8888(light);
+                Call.setRules(Vars.state.rules);
+                oldlight = light;
+                lightSent = true;
+            }
+        })), 0f, config.dynamicDays.updateInterval / 1000f);
     }
 
-    public record Tuple2<T1, T2>(T1 t1, T2 t2) {}
+    private void rebindBanners() {
+        if (bannerScheduler != null) {
+            bannerScheduler.cancel();
+            bannerScheduler = null;
+        }
+
+        if (config.advertisingBanner.enabled && config.advertisingBanner.mode == Config.Mode.queue) {
+            bannerScheduler = new BannerScheduler(config.advertisingBanner.banners, broadcasts.queueBanners,
+                    metrics.probe("task.banners"), budget, pacer);
+            for (Player player : Groups.player) { // уже подключённые игроки продолжают видеть банеры
+                bannerScheduler.join(player);
+            }
+        }
+    }
 }
@@ -0,0 +1,147 @@
+package sky;
+
+import arc.util.Log;
+import arc.util.Nullable;
+import arc.util.Strings;
+import arc.util.Time;
+import arc.util.Timer;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import mindustry.Vars;
+import mindustry.gen.Groups;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.*;
+import java.util.Arrays;
+
+/**
+ * Сборка мусора по состоянию кучи вместо слепого {@code System.gc()} по таймеру.
+ * <p>
+ * JVM сама сообщает о превышении порога заполненности старого поколения после сборки
+ * ({@link MemoryPoolMXBean#setCollectionUsageThreshold(long)}), и только тогда плагин планирует
+ * полную сборку, дожидаясь пустого сервера или паузы между волнами. Паузы всех сборок
+ * записываются в кольцевой буфер для команды {@code memory}.
+ */
+class MemoryManager {
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final long[] pauses;
+
+    private int pauseCount;
+    private volatile boolean pending;
+    private volatile long pendingSince;
+    private long lastCollectTime;
+    private int triggeredCollections;
+
+    private Config.AutoGc config = new Config.AutoGc();
+
+    public MemoryManager(int pauseHistory) {
+        this.pauses = new long[pauseHistory];
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter emitter) {
+                emitter.addNotificationListener((n, handback) -> onGc(n), null, null);
+            }
+        }
+
+        if (memory instanceof NotificationEmitter emitter) {
+            emitter.addNotificationListener((n, handback) -> {
+                if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(n.getType()) && !pending) {
+                    pendingSince = Time.millis();
+                    pending = true;
+                }
+            }, null, null);
+        }
+    }
+
+    /** Применяет настройки и возвращает задачу для текущего режима, либо {@code null} если он выключен. */
+    @Nullable
+    public Timer.Task schedule(Config.AutoGc config, Metrics.Probe probe) {
+        this.config = config;
+        pending = false;
+        if (!config.enabled) {
+            setThreshold(0);
+            return null;
+        }
+
+        if (config.mode == Config.GcMode.fixed) {
+            setThreshold(0);
+            return Timer.schedule(probe.wrap(System::gc), 0f, config.updateInterval / 1000f);
+        }
+
+        setThreshold(config.heapThreshold);
+        return Timer.schedule(probe.wrap(this::check), config.checkInterval / 1000f, config.checkInterval / 1000f);
+    }
+
+    private void check() {
+        if (!pending || Time.timeSinceMillis(lastCollectTime) < config.minIntervalMillis) {
+            return;
+        }
+
+        boolean quiet = Groups.player.isEmpty() ||
+                (Vars.state.rules.waves && Vars.state.enemies == 0);
+        if (!quiet && Time.timeSinceMillis(pendingSince) < config.maxDeferMillis) {
+            return;
+        }
+
+        pending = false;
+        lastCollectTime = Time.millis();
+        triggeredCollections++;
+        Log.info("Heap occupancy exceeded @%, running full GC (@)",
+                (int) (config.heapThreshold * 100), quiet ? "quiet moment" : "deferred too long");
+        System.gc();
+    }
+
+    private void setThreshold(float ratio) {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) {
+                continue;
+            }
+
+            long max = pool.getUsage().getMax();
+            // 0 отключает уведомления; у пулов без максимума (eden) порог не имеет смысла
+            pool.setCollectionUsageThreshold(ratio <= 0 || max <= 0 ? 0 : Math.max(1, (long) (max * ratio)));
+        }
+    }
+
+    private void onGc(Notification notification) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+
+        var info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        synchronized (pauses) {
+            pauses[pauseCount++ % pauses.length] = info.getGcInfo().getDuration();
+        }
+    }
+
+    public void report() {
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        Log.info("Heap: @ MB used / @ MB committed / @ MB max (@%)",
+                heap.getUsed() >> 20, heap.getCommitted() >> 20, heap.getMax() >> 20,
+                heap.getMax() > 0 ? heap.getUsed() * 100 / heap.getMax() : 0);
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            Log.info("  @: @ collections, @ ms total", gc.getName(), gc.getCollectionCount(), gc.getCollectionTime());
+        }
+
+        long[] sorted;
+        synchronized (pauses) {
+            sorted = Arrays.copyOf(pauses, Math.min(pauseCount, pauses.length));
+        }
+        Arrays.sort(sorted);
+        if (sorted.length > 0) {
+            Log.info("Pauses (last @): p50 @ ms, p90 @ ms, p99 @ ms, max @ ms", sorted.length,
+                    percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), sorted[sorted.length - 1]);
+        }
+
+        Log.info("Mode: @, pending: @, plugin-triggered collections: @@", config.enabled ? config.mode : "disabled",
+                pending, triggeredCollections,
+                lastCollectTime == 0 ? "" : Strings.format(" (last @ s ago)", Time.timeSinceMillis(lastCollectTime) / 1000));
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,220 @@
+package sky;
+
+import arc.files.Fi;
+import arc.struct.ObjectMap;
+import arc.struct.Seq;
+import arc.util.Nullable;
+import mindustry.gen.Player;
+import mindustry.net.Packet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Сообщения игрокам на их языке.
+ * <p>
+ * Основной набор {@code bundles/messages.properties} (английский) и переводы {@code messages_<язык>.properties}
+ * лежат в jar, файлы с теми же именами в папке {@code config/bundles} заменяют отдельные строки или добавляют
+ * новые языки. Язык берётся из локали клиента, ключи без перевода берутся из основного набора.
+ * <p>
+ * Параметры {@code {0}}, {@code {1}} разбираются при загрузке. Сообщение без параметров собирается и кодируется
+ * в пакет один раз на язык, поэтому рассылка группам игроков не строит строк. Вызывается только из игрового потока.
+ */
+class Messages {
+
+    static final String directory = "bundles", baseName = "messages", extension = ".properties";
+
+    /** Переводы из jar; список нужен потому что ресурсы в jar нельзя перечислить. */
+    private static final String[] builtIn = {"ru"};
+
+    private final StringBuilder buffer = new StringBuilder(128);
+
+    private ObjectMap<String, Message> base = new ObjectMap<>();
+    private ObjectMap<String, ObjectMap<String, Message>> bundles = new ObjectMap<>(); // по языку
+
+    /**
+     * Перечитывает наборы, уже выданные пакеты остаются валидными.
+     * @param dataDirectory папка config или {@code null}, чтобы взять только встроенные наборы
+     */
+    public void load(@Nullable Fi dataDirectory) throws IOException {
+        ObjectMap<String, Message> base = new ObjectMap<>();
+        read(base, null, dataDirectory);
+
+        Seq<String> languages = Seq.with(builtIn);
+        if (dataDirectory != null && dataDirectory.child(directory).isDirectory()) {
+            for (Fi file : dataDirectory.child(directory).list()) {
+                String name = file.name();
+                if (name.startsWith(baseName + "_") && name.endsWith(extension)) {
+                    String language = name.substring(baseName.length() + 1, name.length() - extension.length());
+                    if (!languages.contains(language)) {
+                        languages.add(language);
+                    }
+                }
+            }
+        }
+
+        ObjectMap<String, ObjectMap<String, Message>> bundles = new ObjectMap<>();
+        for (String language : languages) {
+            ObjectMap<String, Message> bundle = new ObjectMap<>();
+            bundle.putAll(base); // общие объекты: непереведённое кешируется один раз на оба языка
+            read(bundle, language, dataDirectory);
+            bundles.put(language, bundle);
+        }
+
+        this.base = base;
+        this.bundles = bundles;
+    }
+
+    private static void read(ObjectMap<String, Message> bundle, @Nullable String language, @Nullable Fi dataDirectory) throws IOException {
+        String name = baseName + (language == null ? "" : "_" + language) + extension;
+        try (InputStream in = Messages.class.getResourceAsStream("/" + directory + "/" + name)) {
+            if (in != null) {
+                read(bundle, in);
+            }
+        }
+
+        Fi file = dataDirectory == null ? null : dataDirectory.child(directory).child(name);
+        if (file != null && file.exists()) {
+            try (InputStream in = file.read()) {
+                read(bundle, in);
+            }
+        }
+    }
+
+    private static void read(ObjectMap<String, Message> bundle, InputStream in) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        for (String key : properties.stringPropertyNames()) {
+            bundle.put(key, Message.compile(properties.getProperty(key)));
+        }
+    }
+
+    /** {@code ru_RU} и {@code ru} дают {@code ru}. */
+    static String language(@Nullable String locale) {
+        if (locale == null) {
+            return "";
+        }
+        int separator = locale.indexOf('_');
+        if (separator < 0) {
+            separator = locale.indexOf('-');
+        }
+        return separator < 0 ? locale : locale.substring(0, separator);
+    }
+
+    public Seq<String> languages() {
+        Seq<String> languages = new Seq<>();
+        for (String language : bundles.keys()) {
+            languages.add(language);
+        }
+        return languages;
+    }
+
+    public int size() {
+        return base.size;
+    }
+
+    public String get(String key, @Nullable String locale) {
+        return get(key, locale, key);
+    }
+
+    public String get(String key, @Nullable String locale, String def) {
+        Message message = message(key, locale);
+        return message == null ? def : message.format(buffer);
+    }
+
+    /** Готовый пакет сообщения без параметров, один на язык. */
+    public Packet packet(String key, @Nullable String locale) {
+        Message message = message(key, locale);
+        if (message == null) {
+            return BroadcastCache.message(key);
+        }
+        if (message.packet == null) {
+            message.packet = BroadcastCache.message(message.format(buffer));
+        }
+        return message.packet;
+    }
+
+    public String format(String key, @Nullable String locale, Object... args) {
+        Message message = message(key, locale);
+        return message == null ? key : message.format(buffer, args);
+    }
+
+    public void send(Player player, String key, Object... args) {
+        player.sendMessage(args.length == 0 ? get(key, player.locale) : format(key, player.locale, args));
+    }
+
+    @Nullable
+    private Message message(String key, @Nullable String locale) {
+        ObjectMap<String, Message> bundle = bundles.isEmpty() ? null : bundles.get(language(locale));
+        return (bundle == null ? base : bundle).get(key);
+    }
+
+    /** Текст, разобранный на куски между параметрами: {@code literals[i]}, затем {@code args[arguments[i]]}. */
+    static class Message {
+        private final String[] literals;
+        private final int[] arguments;
+
+        @Nullable
+        private Packet packet;
+
+        private Message(String[] literals, int[] arguments) {
+            this.literals = literals;
+            this.arguments = arguments;
+        }
+
+        static Message compile(String source) {
+            Seq<String> literals = new Seq<>();
+            Seq<Integer> arguments = new Seq<>();
+            int literalStart = 0, i = 0;
+            while (i < source.length()) {
+                int open = source.indexOf('{', i);
+                int close = open < 0 ? -1 : source.indexOf('}', open + 1);
+                if (close < 0) {
+                    break;
+                }
+
+                String index = source.substring(open + 1, close);
+                if (!index.matches("\\d{1,2}")) { // не параметр, например цвет в фигурных скобках
+                    i = open + 1;
+                    continue;
+                }
+
+                literals.add(source.substring(literalStart, open));
+                arguments.add(Integer.parseInt(index));
+                literalStart = i = close + 1;
+            }
+            literals.add(source.substring(literalStart));
+
+            int[] array = new int[arguments.size];
+            for (int a = 0; a < array.length; a++) {
+                array[a] = arguments.get(a);
+            }
+            return new Message(literals.toArray(String.class), array);
+        }
+
+        String format(StringBuilder buffer, Object... args) {
+            if (arguments.length == 0) {
+                return literals[0];
+            }
+
+            buffer.setLength(0);
+            for (int i = 0; i < arguments.length; i++) {
+                buffer.append(literals[i]);
+                int argument = arguments[i];
+                if (argument < args.length) {
+                    buffer.append(args[argument]);
+                } else {
+                    buffer.append('{').append(argument).append('}');
+                }
+            }
+            buffer.append(literals[arguments.length]);
+            return buffer.toString();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package sky;
+
+import arc.func.Cons;
+import arc.util.Log;
+import arc.util.Nullable;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики вызовов и гистограммы задержек хуков плагина.
+ * <p>
+ * Запись идёт в {@link LongAdder}, у которого свои ячейки для конкурирующих потоков,
+ * а суммирование происходит только при чтении (команда {@code metrics} или HTTP в формате Prometheus).
+ * Корзины гистограммы идут степенями двойки от 1 мкс до ~1 с и, как {@code le} в Prometheus, включают свою границу.
+ */
+class Metrics {
+
+    static final int bucketCount = 21; // 1 мкс .. 2^20 мкс, плюс переполнение
+
+    private final Map<String, Probe> probes = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final LongAdder totalNanos = new LongAdder(); // по всем хукам, не сбрасывается командой
+
+    @Nullable
+    private HttpServer server;
+    @Nullable
+    private ExecutorService executor; // HttpServer.stop не останавливает переданный ему executor
+
+    public Probe probe(String name) {
+        return probes.computeIfAbsent(name, n -> new Probe(n, totalNanos));
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /** Суммарное время всех хуков с запуска, для {@link TickBudget}. */
+    public long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    Iterable<Probe> probes() {
+        return probes.values();
+    }
+
+    public Runnable wrap(String name, Runnable runnable) {
+        return probe(name).wrap(runnable);
+    }
+
+    public <T> Cons<T> wrap(String name, Cons<T> cons) {
+        Probe probe = probe(name);
+        return value -> {
+            long start = System.nanoTime();
+            try {
+                cons.get(value);
+            } finally {
+                probe.record(start);
+            }
+        };
+    }
+
+    public void reset() {
+        probes.values().forEach(Probe::reset);
+        counters.values().forEach(LongAdder::reset);
+    }
+
+    public void report() {
+        Log.info("@ @ @ @ @ @", pad("hook", 28), pad("calls", 10), pad("avg us", 9), pad("p50 us", 9), pad("p99 us", 9), "max us");
+        for (Probe probe : probes.values()) {
+            long count = probe.count.sum();
+            if (count == 0) {
+                continue;
+            }
+
+            Log.info("@ @ @ @ @ @", pad(probe.name, 28), pad(String.valueOf(count), 10),
+                    pad(String.valueOf(probe.totalNanos.sum() / count / 1000), 9),
+                    pad("<=" + probe.percentileMicros(0.5), 9), pad("<=" + probe.percentileMicros(0.99), 9),
+                    probe.maxNanos.get() / 1000);
+        }
+
+        for (var counter : counters.entrySet()) {
+            Log.info("@ @", pad(counter.getKey(), 28), counter.getValue().sum());
+        }
+    }
+
+    public String prometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# TYPE rcr_plugin_hook_seconds histogram\n");
+        for (Probe probe : probes.values()) {
+            long cumulative = 0;
+            for (int i = 0; i < bucketCount; i++) {
+                cumulative += probe.buckets[i].sum();
+                out.append("rcr_plugin_hook_seconds_bucket{hook=\"").append(probe.name).append("\",le=\"")
+                        .append(String.format(Locale.ROOT, "%.6f", (1L << i) / 1_000_000d)).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            long count = probe.count.sum();
+            out.append("rcr_plugin_hook_seconds_bucket{hook=\"").append(probe.name).append("\",le=\"+Inf\"} ").append(count).append('\n');
+            out.append("rcr_plugin_hook_seconds_sum{hook=\"").append(probe.name).append("\"} ")
+                    .append(String.format(Locale.ROOT, "%.9f", probe.totalNanos.sum() / 1e9)).append('\n');
+            out.append("rcr_plugin_hook_seconds_count{hook=\"").append(probe.name).append("\"} ").append(count).append('\n');
+        }
+
+        out.append("# TYPE rcr_plugin_events_total counter\n");
+        for (var counter : counters.entrySet()) {
+            out.append("rcr_plugin_events_total{event=\"").append(counter.getKey()).append("\"} ")
+                    .append(counter.getValue().sum()).append('\n');
+        }
+        return out.toString();
+    }
+
+    /** Порт запущенного эндпоинта, либо -1 если он не запущен. */
+    int port() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    /** Перезапускает HTTP эндпоинт по настройкам; при выключенном шарде только останавливает. */
+    public void serve(Config.Metrics config) {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+
+        if (!config.enabled) {
+            return;
+        }
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(config.bind, config.port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            });
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "rcr-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            server.setExecutor(executor);
+            server.start();
+            Log.info("Metrics endpoint started on http://@:@/metrics", config.bind, config.port);
+        } catch (IOException e) {
+            Log.err("Unable to start metrics endpoint");
+            Log.err(e);
+        }
+    }
+
+    private static String pad(String text, int width) {
+        return text.length() >= width ? text : text + " ".repeat(width - text.length());
+    }
+
+    static class Probe {
+        public final String name;
+
+        final LongAdder count = new LongAdder(), totalNanos = new LongAdder();
+        final LongAdder[] buckets = new LongAdder[bucketCount + 1];
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder allNanos;
+
+        Probe(String name, LongAdder allNanos) {
+            this.name = name;
+            this.allNanos = allNanos;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long startNanos) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+
+        void recordNanos(long elapsed) {
+            long micros = (elapsed + 999) / 1000; // с округлением вверх, чтобы 1001 нс не попали в корзину 1 мкс
+            // в корзине i значения не больше 2^i мкс, последняя корзина для всего что дольше
+            int bucket = micros <= 1 ? 0 : Math.min(bucketCount, 64 - Long.numberOfLeadingZeros(micros - 1));
+            buckets[bucket].increment();
+            count.increment();
+            totalNanos.add(elapsed);
+            allNanos.add(elapsed);
+            maxNanos.accumulate(elapsed);
+        }
+
+        public Runnable wrap(Runnable runnable) {
+            return () -> {
+                long start = System.nanoTime();
+                try {
+                    runnable.run();
+                } finally {
+                    record(start);
+                }
+            };
+        }
+
+        /** Верхняя граница корзины, в которую попадает перцентиль. */
+        long percentileMicros(double p) {
+            long total = count.sum(), target = (long) Math.ceil(total * p), seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i].sum();
+                if (seen >= target) {
+                    return 1L << i;
+                }
+            }
+            return 1L << bucketCount;
+        }
+
+        void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+        }
+    }
+}
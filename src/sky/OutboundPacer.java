@@ -0,0 +1,222 @@
+package sky;
+
+import arc.struct.IntMap;
+import arc.struct.Seq;
+import mindustry.gen.Groups;
+import mindustry.gen.Player;
+import mindustry.net.Packet;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Очередь исходящих сообщений плагина на каждое соединение.
+ * <p>
+ * Каждый тик соединение получает не больше {@link Config.Pacing#perConnection} пакетов, а все вместе не больше
+ * {@link Config.Pacing#perTick}, поэтому рассылка на весь сервер растягивается на несколько тиков, а банеры
+ * при входе не уходят одной пачкой. Обход начинается с того места, где остановился прошлый тик.
+ * <p>
+ * У сообщения есть ключ: новое сообщение с тем же ключом заменяет ещё не отправленное, например следующая
+ * подсказка заменяет неуспевшую, а {@link #cancel} убирает уже ненужное вроде напоминания о капче после ввода кода.
+ * Сообщение, не отправленное за свой срок, выбрасывается. Очередь ограничена {@link Config.Pacing#queueLimit},
+ * при переполнении вытесняется самое старое. Вызывается только из игрового потока.
+ */
+class OutboundPacer {
+
+    private final IntMap<Lane> lanes = new IntMap<>();
+    private final Seq<Lane> active = new Seq<>(false, 16); // соединения с непустой очередью
+    private final LongAdder sent, coalesced, expired, dropped;
+
+    private Config.Pacing config;
+    private int cursor;
+
+    public OutboundPacer(Config.Pacing config, Metrics metrics) {
+        this.config = config;
+        this.sent = metrics.counter("pacer.sent");
+        this.coalesced = metrics.counter("pacer.coalesced");
+        this.expired = metrics.counter("pacer.expired");
+        this.dropped = metrics.counter("pacer.dropped");
+    }
+
+    /** Новый размер очереди применяется к новым соединениям. */
+    public void setConfig(Config.Pacing config) {
+        this.config = config;
+    }
+
+    public void send(Player player, String key, Packet packet, long now, long maxDelayMillis) {
+        if (!config.enabled) {
+            if (player.con != null && player.con.isConnected()) {
+                BroadcastCache.send(player.con, packet);
+            }
+            return;
+        }
+
+        Lane lane = lanes.get(player.id);
+        if (lane == null) {
+            lanes.put(player.id, lane = new Lane(player, config.queueLimit));
+        }
+        if (!lane.active) {
+            lane.active = true;
+            active.add(lane);
+        }
+        lane.offer(key, packet, now + maxDelayMillis);
+    }
+
+    /** Рассылка всем игрокам через их очереди вместо одного {@code Net#send}. */
+    public void broadcast(String key, Packet packet, long now, long maxDelayMillis) {
+        if (!config.enabled) {
+            BroadcastCache.broadcast(packet);
+            return;
+        }
+
+        for (Player player : Groups.player) {
+            send(player, key, packet, now, maxDelayMillis);
+        }
+    }
+
+    public void cancel(Player player, String key) {
+        Lane lane = lanes.get(player.id);
+        if (lane != null) {
+            lane.remove(key);
+        }
+    }
+
+    public void remove(Player player) {
+        Lane lane = lanes.remove(player.id);
+        if (lane != null) {
+            active.remove(lane, true);
+        }
+    }
+
+    /**
+     * Слушатель {@code Trigger.update}. Обход идёт назад от курсора к началу, затем от конца до курсора.
+     * На место опустевшей очереди встаёт последняя: во второй части она уже пройдена, а в первой
+     * переезжает в пройденную часть и ждёт следующего тика, так что ни одна очередь не обходится дважды.
+     */
+    public void flush(long now) {
+        if (active.isEmpty()) {
+            return;
+        }
+
+        int budget = config.perTick, start = Math.min(cursor, active.size - 1), i;
+        for (i = start; i >= 0 && budget > 0; i--) {
+            budget -= drain(i, budget, now);
+        }
+        if (budget > 0) {
+            for (i = active.size - 1; i > start && budget > 0; i--) {
+                budget -= drain(i, budget, now);
+            }
+        }
+        cursor = i < 0 ? active.size - 1 : i; // следующий тик начнёт с первой необойдённой очереди
+    }
+
+    private int drain(int index, int budget, long now) {
+        Lane lane = active.get(index);
+        int count = lane.drain(Math.min(budget, config.perConnection), now);
+        if (lane.isEmpty()) {
+            lane.active = false;
+            active.remove(index);
+        }
+        return count;
+    }
+
+    /** Кольцевая очередь на параллельных массивах, без объекта на сообщение. */
+    class Lane {
+        private final Player player;
+        private final String[] keys;
+        private final Packet[] packets;
+        private final long[] expires;
+        private int head, size;
+
+        boolean active; // в списке active; очередь может опустеть раньше через cancel
+
+        Lane(Player player, int capacity) {
+            this.player = player;
+            this.keys = new String[capacity];
+            this.packets = new Packet[capacity];
+            this.expires = new long[capacity];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void offer(String key, Packet packet, long expiresAt) {
+            for (int i = 0; i < size; i++) {
+                int slot = slot(i);
+                if (keys[slot].equals(key)) {
+                    packets[slot] = packet;
+                    expires[slot] = expiresAt;
+                    coalesced.increment();
+                    return;
+                }
+            }
+
+            if (size == keys.length) {
+                poll();
+                dropped.increment();
+            }
+            int slot = slot(size++);
+            keys[slot] = key;
+            packets[slot] = packet;
+            expires[slot] = expiresAt;
+        }
+
+        void remove(String key) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int from = slot(i), to = slot(kept);
+                if (!keys[from].equals(key)) {
+                    keys[to] = keys[from];
+                    packets[to] = packets[from];
+                    expires[to] = expires[from];
+                    kept++;
+                }
+            }
+            for (int i = kept; i < size; i++) {
+                clear(slot(i));
+            }
+            size = kept;
+        }
+
+        /** @return сколько пакетов отправлено */
+        int drain(int limit, long now) {
+            if (player.con == null || !player.con.isConnected()) {
+                while (size > 0) {
+                    poll();
+                }
+                return 0;
+            }
+
+            int count = 0;
+            while (size > 0 && count < limit) {
+                long expiresAt = expires[head];
+                Packet packet = poll();
+                if (expiresAt < now) {
+                    expired.increment();
+                    continue;
+                }
+                BroadcastCache.send(player.con, packet);
+                count++;
+            }
+            sent.add(count);
+            return count;
+        }
+
+        private Packet poll() {
+            Packet packet = packets[head];
+            clear(head);
+            head = (head + 1) % keys.length;
+            size--;
+            return packet;
+        }
+
+        private void clear(int slot) {
+            keys[slot] = null;
+            packets[slot] = null;
+        }
+
+        private int slot(int index) {
+            return (head + index) % keys.length;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package sky;
+
+import arc.Core;
+import arc.struct.ObjectMap;
+import arc.util.Time;
+import mindustry.Vars;
+import mindustry.gen.Groups;
+
+/**
+ * Подстановки, доступные в {@code updateDesc.desc}, {@code updateChat.chat} и подсказках.
+ * <p>
+ * Каждая подстановка пишет значение прямо в буфер шаблона, без промежуточных строк там где это возможно.
+ */
+class Placeholders {
+
+    private final ObjectMap<String, Template.Segment> segments = new ObjectMap<>();
+    private final long startTime = Time.millis();
+
+    private DayPeriods periods;
+
+    public Placeholders(DayPeriods periods) {
+        this.periods = periods;
+
+        segments.put("localtime", out -> {
+            int minute = DayPeriods.minuteOfDay();
+            appendTwoDigits(out, minute / 60);
+            out.append(':');
+            appendTwoDigits(out, minute % 60);
+        });
+        segments.put("status", out -> out.append(this.periods.currentLocalized()));
+        segments.put("online", out -> out.append(Groups.player.size()));
+        segments.put("map", out -> out.append(Vars.state.map == null ? "-" : Vars.state.map.name()));
+        segments.put("wave", out -> out.append(Vars.state.wave));
+        segments.put("tps", out -> out.append(Core.graphics.getFramesPerSecond()));
+        segments.put("uptime", out -> {
+            long minutes = Time.timeSinceMillis(startTime) / 60000;
+            long days = minutes / 1440, hours = minutes / 60 % 24;
+            if (days > 0) {
+                out.append(days).append("d ");
+            }
+            if (days > 0 || hours > 0) {
+                out.append(hours).append("h ");
+            }
+            out.append(minutes % 60).append('m');
+        });
+    }
+
+    /** Подстановка, которую даёт другой компонент; регистрировать до компиляции шаблонов. */
+    public void register(String name, Template.Segment segment) {
+        segments.put(name, segment);
+    }
+
+    /** Таблица времени суток меняется вместе с конфигурацией, уже собранные шаблоны её подхватят. */
+    public void setPeriods(DayPeriods periods) {
+        this.periods = periods;
+    }
+
+    public DayPeriods periods() {
+        return periods;
+    }
+
+    public Template compile(String source) {
+        return Template.compile(source, segments);
+    }
+
+    private static void appendTwoDigits(StringBuilder out, int value) {
+        out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+}
@@ -0,0 +1,190 @@
+package sky;
+
+import arc.Core;
+import arc.func.Cons;
+import arc.util.Reflect;
+import mindustry.Vars;
+import rhino.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Выполнение JavaScript админов с бюджетом времени.
+ * <p>
+ * Контекст скриптов Mindustry создан глобальной фабрикой, поэтому бюджет через неё не задать. Скрипты
+ * выполняются в собственных контекстах {@link BudgetedFactory}: интерпретатор каждые
+ * {@link Config.Scripts#instructionThreshold} инструкций сверяется с дедлайном и бросает {@link BudgetExceeded},
+ * так что скрипт, превысивший бюджет, останавливается, а не продолжает работать.
+ * <p>
+ * {@link #run} выполняет скрипт в игровом потоке со scope модов, как раньше, только контекст Mindustry на это время
+ * снимается с потока, иначе Rhino вернул бы его вместо контекста с бюджетом. Мир меняет только игровой поток.
+ * Долгий вызов Java из скрипта наблюдатель не прерывает, тик ждёт его так же, как ждал {@code runConsole}.
+ * <p>
+ * {@link #query} выполняется в фоне над {@link WorldSnapshot}, снятым в игровом потоке. Scope запроса содержит
+ * только стандартные объекты и снимок, доступ к Java классам закрыт, поэтому запрос не читает мир, который
+ * меняет тик. Результат возвращается в игровой поток.
+ */
+class ScriptRunner {
+
+    record Result(String output, boolean error) {}
+
+    private final BudgetedFactory factory = new BudgetedFactory();
+    private final ExecutorService async = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "rcr-js-query");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean queryRunning = new AtomicBoolean();
+
+    private volatile Config.Scripts config;
+
+    public ScriptRunner(Config.Scripts config) {
+        this.config = config;
+    }
+
+    public void setConfig(Config.Scripts config) {
+        this.config = config;
+    }
+
+    /** Выполняет скрипт в игровом потоке; вызывать из игрового потока. */
+    public Result run(String code) {
+        Config.Scripts config = this.config;
+        Scriptable scope = Reflect.get(Vars.mods.getScripts(), "scope"); // getScripts() лениво входит в контекст Mindustry
+
+        Context outer = Context.getCurrentContext();
+        int depth = 0;
+        for (; Context.getCurrentContext() != null; depth++) {
+            Context.exit();
+        }
+        try {
+            BudgetedContext cx = enter(config.syncBudgetMillis, config.instructionThreshold);
+            try {
+                Object output = cx.evaluateString(scope, code, "console.js", 1, null);
+                if (output instanceof NativeJavaObject object) {
+                    output = object.unwrap();
+                }
+                return new Result(output instanceof Undefined ? "undefined" : String.valueOf(output), false);
+            } catch (Throwable t) {
+                return failure(t, config.syncBudgetMillis);
+            } finally {
+                Context.exit();
+            }
+        } finally {
+            for (int i = 0; i < depth; i++) {
+                outer.getFactory().enterContext(outer);
+            }
+        }
+    }
+
+    /** Запускает запрос над снимком мира в фоне, {@code false} если предыдущий ещё выполняется. */
+    public boolean query(String code, Cons<Result> callback) {
+        if (!queryRunning.compareAndSet(false, true)) {
+            return false;
+        }
+
+        Config.Scripts config = this.config;
+        Map<String, Object> snapshot = WorldSnapshot.capture();
+        async.execute(() -> {
+            Result result;
+            try {
+                BudgetedContext cx = enter(config.queryBudgetMillis, config.instructionThreshold);
+                try {
+                    cx.setClassShutter(name -> false);
+                    Scriptable scope = cx.initSafeStandardObjects();
+                    for (var entry : snapshot.entrySet()) {
+                        ScriptableObject.defineProperty(scope, entry.getKey(), toScript(cx, scope, entry.getValue()),
+                                ScriptableObject.READONLY | ScriptableObject.PERMANENT);
+                    }
+
+                    Object output = cx.evaluateString(scope, code, "console.js", 1, null);
+                    if (output instanceof Scriptable && !(output instanceof Function)) {
+                        output = NativeJSON.stringify(cx, scope, output, null, null);
+                    }
+                    result = new Result(Context.toString(output), false);
+                } finally {
+                    Context.exit();
+                }
+            } catch (Throwable t) {
+                result = failure(t, config.queryBudgetMillis);
+            } finally {
+                queryRunning.set(false);
+            }
+            Result posted = result;
+            Core.app.post(() -> callback.get(posted));
+        });
+        return true;
+    }
+
+    private BudgetedContext enter(long budgetMillis, int threshold) {
+        BudgetedContext cx = (BudgetedContext) factory.enterContext();
+        cx.setInstructionObserverThreshold(threshold);
+        cx.deadline = System.nanoTime() + budgetMillis * 1_000_000L;
+        return cx;
+    }
+
+    private static Result failure(Throwable t, long budgetMillis) {
+        if (t instanceof BudgetExceeded) {
+            return new Result("Script exceeded its budget of " + budgetMillis + " ms", true);
+        }
+        if (t instanceof RhinoException e) {
+            return new Result(e.getClass().getSimpleName() + ": " + e.details(), true);
+        }
+        // исключения Java кода, вызванного из скрипта
+        return new Result(t.getClass().getSimpleName() + (t.getMessage() == null ? "" : ": " + t.getMessage()), true);
+    }
+
+    /** Списки и словари снимка в массивы и объекты JavaScript; строки, числа и логические Rhino принимает как есть. */
+    private static Object toScript(Context cx, Scriptable scope, Object value) {
+        if (value instanceof List<?> list) {
+            Object[] elements = new Object[list.size()];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = toScript(cx, scope, list.get(i));
+            }
+            return cx.newArray(scope, elements);
+        }
+        if (value instanceof Map<?, ?> map) {
+            Scriptable object = cx.newObject(scope);
+            for (var entry : map.entrySet()) {
+                ScriptableObject.putProperty(object, (String) entry.getKey(), toScript(cx, scope, entry.getValue()));
+            }
+            return object;
+        }
+        return value;
+    }
+
+    static class BudgetedContext extends Context {
+        long deadline;
+
+        BudgetedContext(ContextFactory factory) {
+            super(factory);
+        }
+    }
+
+    static class BudgetedFactory extends ContextFactory {
+        @Override
+        protected Context makeContext() {
+            BudgetedContext cx = new BudgetedContext(this);
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            cx.setOptimizationLevel(-1); // наблюдатель инструкций работает только в интерпретаторе
+            return cx;
+        }
+
+        @Override
+        protected void observeInstructionCount(Context cx, int instructionCount) {
+            if (System.nanoTime() > ((BudgetedContext) cx).deadline) {
+                throw new BudgetExceeded();
+            }
+        }
+    }
+
+    /** {@link Error}, а не исключение, чтобы скрипт не мог перехватить его в try/catch. */
+    static class BudgetExceeded extends Error {
+        BudgetExceeded() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package sky;
+
+import arc.Core;
+import arc.func.Cons;
+import arc.struct.Seq;
+import arc.util.Log;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Общее состояние серверов RCR на одной машине без внешнего брокера.
+ * <p>
+ * У каждого сервера свой отображённый в память файл {@code <instance>.ring} в общей папке: заголовок с числом
+ * игроков, портом и временем последнего сигнала жизни, и кольцо событий фиксированного размера. Пишет в файл
+ * только сам сервер, остальные читают его без блокировок: номер слота публикуется release записью после
+ * содержимого, а читатель сверяет его до и после копирования, как в seqlock, и пропускает перезаписанные
+ * слоты. Отставший больше чем на кольцо читатель теряет старые события, они учитываются в {@code shared.lost}.
+ * <p>
+ * Опрос соседей и поиск новых файлов идут в фоновом потоке, события передаются в игровой поток. Публикация
+ * и число игроков меняются только из игрового потока.
+ */
+class SharedState {
+
+    enum Kind {verified, announce, ban, unban, kick}
+
+    /** Поля, не нужные событию, пустые; {@code value} это срок доверия или длительность кика. */
+    record Event(String source, Kind kind, String uuid, String address, String text, long value) {}
+
+    static final String extension = ".ring";
+
+    private static final VarHandle longs = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle ints = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private static final int magic = 0x52435253; // RCRS
+    // заголовок: magic, slots, sequence, heartbeat, online, port
+    private static final int slotsOffset = 4, sequenceOffset = 8, heartbeatOffset = 16, onlineOffset = 24, portOffset = 28;
+    private static final int headerSize = 64, slotSize = 512, payloadSize = slotSize - 16;
+    private static final int discoverEvery = 20; // опросов между просмотрами папки
+
+    private final Path directory;
+    private final String instance;
+    private final Config.Shared config;
+    private final MappedByteBuffer own;
+    private final int slots;
+    private final ByteBuffer scratch = ByteBuffer.allocate(payloadSize);
+    private final LongAdder sent, received, lost;
+
+    private long sequence;
+    private volatile Peer[] peers = new Peer[0];
+
+    private SharedState(Path directory, String instance, Config.Shared config, MappedByteBuffer own, Metrics metrics) {
+        this.directory = directory;
+        this.instance = instance;
+        this.config = config;
+        this.own = own;
+        this.slots = own.getInt(slotsOffset);
+        this.sequence = (long) longs.getAcquire(own, sequenceOffset);
+        this.sent = metrics.counter("shared.sent");
+        this.received = metrics.counter("shared.received");
+        this.lost = metrics.counter("shared.lost");
+    }
+
+    /** Открывает или создаёт файл сервера; кольцо другого размера пересоздаётся пустым. */
+    public static SharedState open(Path directory, String instance, int port, Config.Shared config, Metrics metrics) throws IOException {
+        Files.createDirectories(directory);
+        int slots = Integer.highestOneBit(Math.max(config.capacity, 16));
+        long size = headerSize + (long) slots * slotSize;
+        try (FileChannel channel = FileChannel.open(directory.resolve(instance + extension),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean valid = channel.size() == size;
+            if (!valid) {
+                channel.truncate(0);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (!valid || buffer.getInt(0) != magic || buffer.getInt(slotsOffset) != slots) {
+                for (int i = 0; i < size; i += 8) {
+                    buffer.putLong(i, 0L);
+                }
+                buffer.putInt(slotsOffset, slots);
+                buffer.putInt(0, magic);
+            }
+            // номер последовательности сохраняется, чтобы соседи продолжили чтение с того же места
+            buffer.putInt(portOffset, port);
+            ints.setRelease(buffer, onlineOffset, 0);
+            return new SharedState(directory, instance, config, buffer, metrics);
+        }
+    }
+
+    public String instance() {
+        return instance;
+    }
+
+    public Peer[] peers() {
+        return peers;
+    }
+
+    public void setOnline(int online) {
+        ints.setRelease(own, onlineOffset, online);
+    }
+
+    /** Игроки на всех живых серверах, включая этот. */
+    public int networkOnline(int local, long now) {
+        int total = local;
+        for (Peer peer : peers) {
+            if (peer.alive(now, config.peerTimeoutMillis)) {
+                total += peer.online();
+            }
+        }
+        return total;
+    }
+
+    public void publish(Kind kind, String uuid, String address, String text, long value) {
+        scratch.clear();
+        putString(uuid, 64);
+        putString(address, 64);
+        scratch.putLong(value);
+        putString(text, scratch.remaining() - 2);
+
+        long seq = sequence;
+        int offset = slotOffset(seq, slots);
+        // отрицательный номер помечает слот как записываемый, его содержимое читатель отбросит
+        longs.setOpaque(own, offset, -(seq + 1));
+        VarHandle.storeStoreFence();
+        own.putInt(offset + 8, kind.ordinal());
+        own.putInt(offset + 12, scratch.position());
+        own.put(offset + 16, scratch.array(), 0, scratch.position());
+        longs.setRelease(own, offset, seq + 1);
+        longs.setRelease(own, sequenceOffset, seq + 1);
+        sequence = seq + 1;
+        sent.increment();
+    }
+
+    /** Строка в UTF-8 с длиной впереди, обрезанная по границе символа. */
+    private void putString(String value, int limit) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, limit);
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        scratch.putShort((short) length);
+        scratch.put(bytes, 0, length);
+    }
+
+    /** Запускает фоновый опрос соседей, {@code listener} вызывается в игровом потоке. */
+    public void start(Cons<Event> listener) {
+        Thread thread = new Thread(() -> {
+            Seq<Event> events = new Seq<>();
+            byte[] payload = new byte[payloadSize];
+            for (int iteration = 0; !Thread.currentThread().isInterrupted(); iteration++) {
+                try {
+                    longs.setRelease(own, heartbeatOffset, System.currentTimeMillis());
+                    if (iteration % discoverEvery == 0) {
+                        discover();
+                    }
+
+                    for (Peer peer : peers) {
+                        try {
+                            if (!peer.poll(payload, events)) {
+                                forget(peer);
+                            }
+                        } catch (InternalError e) { // файл соседа обрезан при перезапуске с другим размером кольца
+                            forget(peer);
+                        }
+                    }
+                    if (!events.isEmpty()) {
+                        received.add(events.size);
+                        Seq<Event> batch = events;
+                        events = new Seq<>();
+                        Core.app.post(() -> batch.each(listener));
+                    }
+
+                    Thread.sleep(config.pollIntervalMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Throwable t) {
+                    Log.err("Shared state poll failed");
+                    Log.err(t);
+                }
+            }
+        }, "rcr-shared");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void discover() throws IOException {
+        Seq<Peer> next = Seq.with(peers);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + extension)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                name = name.substring(0, name.length() - extension.length());
+                String peerName = name;
+                if (name.equals(instance) || next.contains(p -> p.name.equals(peerName))) {
+                    continue;
+                }
+
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    if (channel.size() < headerSize) {
+                        continue;
+                    }
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    int slots = buffer.getInt(slotsOffset);
+                    if (buffer.getInt(0) != magic || channel.size() != headerSize + (long) slots * slotSize) {
+                        continue;
+                    }
+                    next.add(new Peer(name, buffer, slots));
+                    Log.info("Shared state: found server '@'", name);
+                }
+            }
+        }
+        if (next.size != peers.length) {
+            peers = next.toArray(Peer.class);
+        }
+    }
+
+    void forget(Peer peer) {
+        Seq<Peer> next = Seq.with(peers);
+        next.remove(peer);
+        peers = next.toArray(Peer.class);
+        Log.info("Shared state: lost server '@', it will be found again", peer.name);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort();
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static int slotOffset(long seq, int slots) {
+        return headerSize + (int) (seq & (slots - 1)) * slotSize;
+    }
+
+    class Peer {
+        public final String name;
+
+        private final MappedByteBuffer buffer;
+        private final int slots;
+        private long position; // следующий номер к прочтению
+
+        Peer(String name, MappedByteBuffer buffer, int slots) {
+            this.name = name;
+            this.buffer = buffer;
+            this.slots = slots;
+            this.position = (long) longs.getAcquire(buffer, sequenceOffset); // историю до подключения не читаем
+        }
+
+        public int online() {
+            return (int) ints.getAcquire(buffer, onlineOffset);
+        }
+
+        public int port() {
+            return buffer.getInt(portOffset);
+        }
+
+        public long heartbeat() {
+            return (long) longs.getAcquire(buffer, heartbeatOffset);
+        }
+
+        public boolean alive(long now, long timeoutMillis) {
+            return now - heartbeat() < timeoutMillis;
+        }
+
+        /** @return {@code false} если сосед пересоздал файл с другим размером кольца и его нужно открыть заново */
+        boolean poll(byte[] payload, Seq<Event> out) {
+            if (buffer.getInt(0) != magic || buffer.getInt(slotsOffset) != slots) {
+                return false;
+            }
+
+            long published = (long) longs.getAcquire(buffer, sequenceOffset);
+            if (published < position) { // сосед пересоздал файл
+                position = published;
+            }
+            if (published - position > slots) {
+                lost.add(published - position - slots);
+                position = published - slots;
+            }
+
+            for (; position < published; position++) {
+                int offset = slotOffset(position, slots);
+                long before = (long) longs.getAcquire(buffer, offset);
+                if (before != position + 1) {
+                    lost.increment();
+                    continue;
+                }
+
+                int kind = buffer.getInt(offset + 8), length = buffer.getInt(offset + 12);
+                if (kind < 0 || kind >= Kind.values().length || length < 0 || length > payloadSize) {
+                    lost.increment();
+                    continue;
+                }
+                buffer.get(offset + 16, payload, 0, length);
+                VarHandle.loadLoadFence();
+                if ((long) longs.getOpaque(buffer, offset) != before) { // писатель обогнал нас посреди копирования
+                    lost.increment();
+                    continue;
+                }
+
+                ByteBuffer in = ByteBuffer.wrap(payload, 0, length);
+                String uuid = getString(in), address = getString(in);
+                long value = in.getLong();
+                out.add(new Event(name, Kind.values()[kind], uuid, address, getString(in), value));
+            }
+            return true;
+        }
+    }
+}
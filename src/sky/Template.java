@@ -0,0 +1,84 @@
+package sky;
+
+import arc.struct.ObjectMap;
+import arc.struct.Seq;
+
+/**
+ * Шаблон с подстановками вида {@code %name%}, заранее разобранный на сегменты.
+ * <p>
+ * Разбор выполняется один раз при загрузке конфигурации, рендер пишет сегменты в переиспользуемый буфер.
+ * Неизвестные подстановки остаются в тексте как есть. Не потокобезопасен.
+ */
+class Template {
+
+    private final Segment[] segments;
+    private final StringBuilder buffer;
+    private final boolean dynamic;
+
+    private Template(Segment[] segments, int capacity, boolean dynamic) {
+        this.segments = segments;
+        this.buffer = new StringBuilder(capacity);
+        this.dynamic = dynamic;
+    }
+
+    public static Template compile(String source, ObjectMap<String, Segment> placeholders) {
+        Seq<Segment> segments = new Seq<>();
+        boolean dynamic = false;
+        int literalStart = 0, i = 0;
+        while (i < source.length()) {
+            int open = source.indexOf('%', i);
+            if (open == -1) {
+                break;
+            }
+
+            int close = source.indexOf('%', open + 1);
+            if (close == -1) {
+                break;
+            }
+
+            Segment placeholder = placeholders.get(source.substring(open + 1, close));
+            if (placeholder == null) { // не подстановка, закрывающий % может открывать следующую
+                i = close;
+                continue;
+            }
+
+            if (open > literalStart) {
+                segments.add(literal(source.substring(literalStart, open)));
+            }
+            segments.add(placeholder);
+            dynamic = true;
+            literalStart = i = close + 1;
+        }
+
+        if (literalStart < source.length()) {
+            segments.add(literal(source.substring(literalStart)));
+        }
+
+        Segment[] array = new Segment[segments.size];
+        for (int s = 0; s < array.length; s++) {
+            array[s] = segments.get(s);
+        }
+        return new Template(array, source.length() + 16, dynamic);
+    }
+
+    /** Есть ли в шаблоне подстановки; без них результат рендера всегда одинаков. */
+    public boolean isDynamic() {
+        return dynamic;
+    }
+
+    public String render() {
+        buffer.setLength(0);
+        for (Segment segment : segments) {
+            segment.append(buffer);
+        }
+        return buffer.toString();
+    }
+
+    static Segment literal(String text) {
+        return out -> out.append(text);
+    }
+
+    interface Segment {
+        void append(StringBuilder out);
+    }
+}
@@ -0,0 +1,107 @@
+package sky;
+
+import arc.Core;
+import arc.util.Log;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Бюджет времени плагина на тик и сброс фоновой работы при перегрузке.
+ * <p>
+ * Время плагина за тик это прирост суммарного времени всех {@link Metrics.Probe}, поэтому учитываются и фильтры,
+ * и задачи таймеров, и слушатели событий. Среднее сглаживается, и при превышении
+ * {@link Config.LoadShedding#budgetMicros} или падении TPS ниже {@link Config.LoadShedding#minTps} включается
+ * перегрузка. Выключается она только когда среднее опустится до трёх четвертей бюджета, чтобы режим не
+ * переключался каждый тик.
+ * <p>
+ * В перегрузке задачи {@link Priority#low} пропускаются, {@link Priority#normal} откладываются не больше
+ * {@link Config.LoadShedding#maxDeferrals} раз подряд, {@link Priority#critical} выполняются всегда.
+ * Вызывается только из игрового потока.
+ */
+class TickBudget {
+
+    enum Priority {
+        critical, // авторизация, кики, фильтры
+        normal, // описание сервера, смена дня и ночи
+        low // эффекты движения, банеры, подсказки и реклама в чате
+    }
+
+    private final Metrics metrics;
+    private final LongAdder[] shed = new LongAdder[Priority.values().length];
+
+    private Config.LoadShedding config;
+    private long lastTotalNanos, averageNanos;
+    private boolean overloaded;
+
+    public TickBudget(Config.LoadShedding config, Metrics metrics) {
+        this.config = config;
+        this.metrics = metrics;
+        for (Priority priority : Priority.values()) {
+            shed[priority.ordinal()] = metrics.counter("budget.shed." + priority);
+        }
+    }
+
+    public void setConfig(Config.LoadShedding config) {
+        this.config = config;
+        if (!config.enabled) {
+            overloaded = false;
+        }
+    }
+
+    public boolean overloaded() {
+        return overloaded;
+    }
+
+    public long averageMicros() {
+        return averageNanos / 1000;
+    }
+
+    /** Первый слушатель {@code Trigger.update}: закрывает прошлый тик и пересчитывает режим. */
+    public void tick() {
+        long total = metrics.totalNanos();
+        long spent = total - lastTotalNanos;
+        lastTotalNanos = total;
+        averageNanos += (spent - averageNanos) >> 3; // ~8 тиков
+
+        if (!config.enabled) {
+            return;
+        }
+
+        long budgetNanos = config.budgetMicros * 1000L;
+        boolean slow = Core.graphics.getFramesPerSecond() < config.minTps;
+        boolean next = overloaded ? slow || averageNanos > budgetNanos * 3 / 4 : slow || averageNanos > budgetNanos;
+        if (next != overloaded) {
+            overloaded = next;
+            Log.info("Plugin load shedding @: @ us per tick, @ TPS", next ? "on" : "off",
+                    averageMicros(), Core.graphics.getFramesPerSecond());
+        }
+    }
+
+    /** Можно ли сейчас выполнить одноразовую работу; пропуск учитывается в {@code budget.shed.*}. */
+    public boolean admit(Priority priority) {
+        if (!overloaded || priority == Priority.critical) {
+            return true;
+        }
+        shed[priority.ordinal()].increment();
+        return false;
+    }
+
+    /** Периодическая задача, которая пропускает запуски при перегрузке. */
+    public Runnable wrap(Priority priority, Runnable task) {
+        return new Runnable() {
+            int deferred;
+
+            @Override
+            public void run() {
+                if (overloaded && priority != Priority.critical &&
+                        (priority == Priority.low || deferred < config.maxDeferrals)) {
+                    deferred++;
+                    shed[priority.ordinal()].increment();
+                    return;
+                }
+                deferred = 0;
+                task.run();
+            }
+        };
+    }
+}
@@ -0,0 +1,342 @@
+package sky;
+
+import arc.files.Fi;
+import arc.math.Mathf;
+import arc.struct.IntMap;
+import arc.struct.LongMap;
+import arc.struct.ObjectIntMap;
+import arc.util.Nullable;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Подсказки из {@code rcr-tips.json} в индексном файле {@code rcr-tips.idx}, отображённом в память.
+ * <p>
+ * Файл состоит из заголовка, таблицы тегов, записей по 24 байта (смещение и длина текста, маска тегов, вес)
+ * и текстов в UTF-8. В куче живут только теги и выборки, а текст декодируется лишь у показанной подсказки,
+ * поэтому запуск и память не зависят от числа подсказок. В заголовке хранятся размер и время изменения
+ * JSON, и индекс пересобирается потоковым разбором только когда они не совпали.
+ * <p>
+ * Подсказка подходит, если все её теги есть у контекста показа: {@code locale:<язык>}, {@code map:<карта>},
+ * {@code mode:<режим>}. Подсказка без тегов подходит всегда. Выборка подходящих записей с накопленными весами
+ * строится при первом показе в таком контексте и дальше выбирается двоичным поиском.
+ * Шаблон показанной подсказки собирается один раз и живёт вместе с индексом.
+ */
+class TipStore {
+
+    static final String indexFileName = "rcr-tips.idx";
+
+    private static final int magic = 0x52435449; // RCTI
+    private static final int version = 1;
+    private static final int maxTags = 64; // маска тегов записи это long
+    private static final int maxSelections = 256;
+    private static final int maxTemplates = 1024;
+    // заголовок: magic, version, count, tagCount, sourceLength, sourceModified, entriesOffset, textOffset
+    private static final int headerSize = 40, entrySize = 24;
+
+    private final ByteBuffer buffer;
+    private final int count, entriesOffset;
+    private final long sourceLength, sourceModified;
+    private final ObjectIntMap<String> tags = new ObjectIntMap<>(); // тег -> номер бита
+    private final LongMap<Selection> selections = new LongMap<>(); // по маске контекста, только игровой поток
+    private final IntMap<Template> templates = new IntMap<>(); // по записи, только игровой поток
+
+    private TipStore(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(8);
+        this.sourceLength = buffer.getLong(16);
+        this.sourceModified = buffer.getLong(24);
+        this.entriesOffset = buffer.getInt(32);
+
+        int tagCount = buffer.getInt(12), position = headerSize;
+        for (int i = 0; i < tagCount; i++) {
+            int length = buffer.getShort(position);
+            tags.put(string(position + 2, length), i);
+            position += 2 + length;
+        }
+    }
+
+    /** Открывает индекс, пересобирая его, если {@code source} изменился с прошлой сборки. */
+    public static TipStore open(Fi source, Fi index, JsonFactory factory) throws IOException {
+        Path sourcePath = source.file().toPath(), indexPath = index.file().toPath();
+        long length = Files.size(sourcePath), modified = Files.getLastModifiedTime(sourcePath).toMillis();
+
+        TipStore store = Files.exists(indexPath) ? map(indexPath) : null;
+        if (store != null && store.sourceLength == length && store.sourceModified == modified) {
+            return store;
+        }
+
+        build(sourcePath, indexPath, length, modified, factory);
+        return map(indexPath);
+    }
+
+    /** Уже собранный индекс без сверки с JSON, пока изменённый файл пересобирается в фоне. */
+    @Nullable
+    public static TipStore openIndex(Fi index) throws IOException {
+        Path path = index.file().toPath();
+        return Files.exists(path) ? map(path) : null;
+    }
+
+    /** Без подсказок, если их файл не удалось разобрать при запуске. */
+    public static TipStore empty() {
+        ByteBuffer buffer = ByteBuffer.allocate(headerSize);
+        buffer.putInt(0, magic).putInt(4, version).putLong(16, -1).putLong(24, -1)
+                .putInt(32, headerSize).putInt(36, headerSize);
+        return new TipStore(buffer);
+    }
+
+    @Nullable
+    private static TipStore map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < headerSize) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return buffer.getInt(0) == magic && buffer.getInt(4) == version ? new TipStore(buffer) : null;
+        }
+    }
+
+    /** Потоковый разбор массива {@code tips}, остальные поля пропускаются. */
+    private static void build(Path source, Path index, long sourceLength, long sourceModified, JsonFactory factory) throws IOException {
+        List<String> tagNames = new ArrayList<>();
+        ObjectIntMap<String> tagBits = new ObjectIntMap<>();
+        ByteArrayOutputStream entryBytes = new ByteArrayOutputStream(), text = new ByteArrayOutputStream();
+        DataOutputStream entries = new DataOutputStream(entryBytes);
+        int count = 0;
+
+        try (JsonParser parser = factory.createParser(source.toFile())) {
+            expect(parser.nextToken() == JsonToken.START_OBJECT, parser, "an object");
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (!field.equals("tips")) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                expect(parser.currentToken() == JsonToken.START_ARRAY, parser, "an array of tips");
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    String tip = null;
+                    float weight = 1f;
+                    long mask = 0;
+                    if (parser.currentToken() == JsonToken.VALUE_STRING) {
+                        tip = parser.getText();
+                    } else {
+                        expect(parser.currentToken() == JsonToken.START_OBJECT, parser, "a string or an object");
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String name = parser.getCurrentName();
+                            JsonToken token = parser.nextToken();
+                            switch (name) {
+                                case "text" -> tip = parser.getValueAsString();
+                                case "weight" -> weight = parser.getFloatValue();
+                                case "locale" -> mask |= bit("locale:" + parser.getText(), tagNames, tagBits, parser);
+                                case "tags" -> {
+                                    expect(token == JsonToken.START_ARRAY, parser, "an array of tags");
+                                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                                        mask |= bit(parser.getText(), tagNames, tagBits, parser);
+                                    }
+                                }
+                                default -> parser.skipChildren();
+                            }
+                        }
+                    }
+
+                    expect(tip != null, parser, "a tip text");
+                    expect(weight > 0, parser, "a positive weight");
+                    byte[] bytes = tip.getBytes(StandardCharsets.UTF_8);
+                    entries.writeInt(text.size());
+                    entries.writeInt(bytes.length);
+                    entries.writeLong(mask);
+                    entries.writeFloat(weight);
+                    entries.writeInt(0);
+                    text.write(bytes);
+                    count++;
+                }
+            }
+        }
+
+        ByteArrayOutputStream tagBytes = new ByteArrayOutputStream();
+        DataOutputStream tagsOut = new DataOutputStream(tagBytes);
+        for (String tag : tagNames) {
+            byte[] bytes = tag.getBytes(StandardCharsets.UTF_8);
+            tagsOut.writeShort(bytes.length);
+            tagsOut.write(bytes);
+        }
+
+        int entriesOffset = headerSize + tagBytes.size();
+        Path temp = index.resolveSibling(index.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temp); DataOutputStream out = new DataOutputStream(file)) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeInt(count);
+            out.writeInt(tagNames.size());
+            out.writeLong(sourceLength);
+            out.writeLong(sourceModified);
+            out.writeInt(entriesOffset);
+            out.writeInt(entriesOffset + entryBytes.size());
+            tagBytes.writeTo(out);
+            entryBytes.writeTo(out);
+            text.writeTo(out);
+        }
+        // уже отображённый старый индекс остаётся валидным до перехода на новый снимок
+        Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long bit(String tag, List<String> names, ObjectIntMap<String> bits, JsonParser parser) throws IOException {
+        int bit = bits.get(tag, -1);
+        if (bit < 0) {
+            expect(names.size() < maxTags, parser, "at most " + maxTags + " distinct tags and locales");
+            bit = names.size();
+            names.add(tag);
+            bits.put(tag, bit);
+        }
+        return 1L << bit;
+    }
+
+    private static void expect(boolean condition, JsonParser parser, String what) throws IOException {
+        if (!condition) {
+            throw new IOException("Invalid tips at " + parser.currentLocation() + ": expected " + what);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Собран ли индекс из того же состояния JSON. */
+    public boolean sameSource(TipStore other) {
+        return sourceLength == other.sourceLength && sourceModified == other.sourceModified;
+    }
+
+    /**
+     * Следующая подсказка для контекста; если на языке игрока нет ни одной подсказки, берётся {@code fallbackLocale}.
+     * @return номер записи или -1, если не подходит ни одна
+     */
+    public int next(String locale, String fallbackLocale, String map, String mode, boolean weighted) {
+        long language = bit("locale:" + locale);
+        if (language == 0) {
+            language = bit("locale:" + fallbackLocale);
+        }
+
+        Selection selection = selection(language | bit("map:" + map) | bit("mode:" + mode));
+        if (selection.isEmpty()) {
+            return -1;
+        }
+        return weighted ? selection.weighted() : selection.sequential();
+    }
+
+    public String text(int entry) {
+        int offset = entriesOffset + entry * entrySize;
+        return string(buffer.getInt(36) + buffer.getInt(offset), buffer.getInt(offset + 4));
+    }
+
+    /** Собранный шаблон записи; подстановки те же, пока жив индекс, поэтому кешируется здесь. */
+    public Template template(int entry, Placeholders placeholders) {
+        Template template = templates.get(entry);
+        if (template == null) {
+            if (templates.size >= maxTemplates) {
+                templates.clear();
+            }
+            templates.put(entry, template = placeholders.compile(text(entry)));
+        }
+        return template;
+    }
+
+    private long bit(String tag) {
+        int bit = tags.get(tag, -1);
+        return bit < 0 ? 0 : 1L << bit;
+    }
+
+    private Selection selection(long context) {
+        Selection selection = selections.get(context);
+        if (selection != null) {
+            return selection;
+        }
+
+        int matching = 0;
+        for (int i = 0; i < count; i++) {
+            if ((mask(i) & ~context) == 0) {
+                matching++;
+            }
+        }
+
+        int[] entries = new int[matching];
+        float[] cumulative = new float[matching];
+        float total = 0;
+        for (int i = 0, j = 0; i < count; i++) {
+            if ((mask(i) & ~context) == 0) {
+                total += buffer.getFloat(entriesOffset + i * entrySize + 16);
+                entries[j] = i;
+                cumulative[j++] = total;
+            }
+        }
+
+        if (selections.size >= maxSelections) { // карт много, а выборки дешево построить заново
+            selections.clear();
+        }
+        selections.put(context, selection = new Selection(entries, cumulative));
+        return selection;
+    }
+
+    private long mask(int entry) {
+        return buffer.getLong(entriesOffset + entry * entrySize + 8);
+    }
+
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static class Selection {
+        private final int[] entries;
+        private final float[] cumulative;
+        private int cursor;
+
+        Selection(int[] entries, float[] cumulative) {
+            this.entries = entries;
+            this.cumulative = cumulative;
+        }
+
+        boolean isEmpty() {
+            return entries.length == 0;
+        }
+
+        int sequential() {
+            if (cursor >= entries.length) {
+                cursor = 0;
+            }
+            return entries[cursor++];
+        }
+
+        int weighted() {
+            float target = Mathf.random(cumulative[cumulative.length - 1]);
+            int low = 0, high = cumulative.length - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cumulative[middle] <= target) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return entries[low];
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package sky;
+
+import arc.files.Fi;
+import arc.math.Mathf;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Игроки, уже прошедшие капчу, по паре uuid+IP со сроком действия.
+ * <p>
+ * Хранится в отображённом в память файле фиксированного размера: заголовок и слоты по 16 байт
+ * (64-битный хеш пары и время истечения). Открытая адресация с окном пробирования в 16 слотов,
+ * при вставке занимается пустой или истёкший слот, а если таких нет, то слот с самым ранним истечением.
+ * Запись идёт прямо в страницы файла, поэтому данные переживают перезапуск без отдельного сохранения.
+ */
+class TrustStore {
+
+    static final String fileName = "rcr-trust.bin";
+
+    private static final int magic = 0x52435254; // RCRT
+    private static final int headerSize = 16, slotSize = 16, probeLimit = 16;
+    /** Наибольшая степень двойки, при которой файл помещается в один буфер с int смещениями (1 ГиБ). */
+    static final int maxCapacity = 1 << 26;
+
+    private final MappedByteBuffer buffer;
+    private final int mask;
+
+    private TrustStore(MappedByteBuffer buffer, int capacity) {
+        this.buffer = buffer;
+        this.mask = capacity - 1;
+    }
+
+    /** Файл другой ёмкости или с чужим заголовком пересоздаётся пустым. */
+    public static TrustStore open(Fi file, int requestedCapacity) throws IOException {
+        if (requestedCapacity > maxCapacity) {
+            throw new IllegalArgumentException("Trust store capacity " + requestedCapacity + " exceeds " + maxCapacity);
+        }
+        int capacity = Mathf.nextPowerOfTwo(Math.max(requestedCapacity, probeLimit));
+        long size = headerSize + (long) capacity * slotSize;
+        try (FileChannel channel = FileChannel.open(file.file().toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean valid = channel.size() == size;
+            if (!valid) {
+                channel.truncate(0);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (!valid || buffer.getInt(0) != magic || buffer.getInt(4) != capacity) {
+                for (long i = 0; i < size; i += 8) {
+                    buffer.putLong((int) i, 0L);
+                }
+                buffer.putInt(0, magic);
+                buffer.putInt(4, capacity);
+            }
+            return new TrustStore(buffer, capacity);
+        }
+    }
+
+    public boolean contains(String uuid, String address, long now) {
+        long key = key(uuid, address);
+        int start = (int) key & mask;
+        for (int i = 0; i < probeLimit; i++) {
+            int offset = offset((start + i) & mask);
+            long slotKey = buffer.getLong(offset);
+            if (slotKey == 0) {
+                return false;
+            }
+            if (slotKey == key) {
+                return buffer.getLong(offset + 8) > now;
+            }
+        }
+        return false;
+    }
+
+    public void add(String uuid, String address, long expiresAt, long now) {
+        long key = key(uuid, address);
+        int start = (int) key & mask, target = -1;
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < probeLimit; i++) {
+            int offset = offset((start + i) & mask);
+            long slotKey = buffer.getLong(offset), expires = buffer.getLong(offset + 8);
+            // устаревший дубликат ключа дальше по цепочке не мешает: поиск остановится на этом слоте
+            if (slotKey == key || slotKey == 0 || expires <= now) {
+                target = offset;
+                break;
+            }
+            if (expires < earliest) {
+                earliest = expires;
+                target = offset;
+            }
+        }
+
+        // сначала срок, потом ключ: оборванная запись оставит старый ключ с новым сроком, а не наоборот
+        buffer.putLong(target + 8, expiresAt);
+        buffer.putLong(target, key);
+    }
+
+    private static int offset(int slot) {
+        return headerSize + slot * slotSize;
+    }
+
+    /** FNV-1a по обеим строкам; 0 зарезервирован под пустой слот. */
+    static long key(String uuid, String address) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < uuid.length(); i++) {
+            hash = (hash ^ uuid.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ '|') * 0x100000001b3L;
+        for (int i = 0; i < address.length(); i++) {
+            hash = (hash ^ address.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 29; // младшие биты идут в индекс слота
+        return hash == 0 ? 1 : hash;
+    }
+}
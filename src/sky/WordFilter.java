@@ -0,0 +1,311 @@
+package sky;
+
+import arc.graphics.Colors;
+import arc.math.Mathf;
+
+import java.util.Arrays;
+
+/**
+ * Автомат Ахо-Корасик по запрещённым словам: все слова ищутся за один проход по сообщению.
+ * <p>
+ * Переходы хранятся в одной хеш-таблице с открытой адресацией по ключу (узел, символ), так что
+ * на тысячи слов не заводится по объекту на узел. У каждого узла есть ссылка на ближайший по суффиксным
+ * ссылкам узел, где заканчивается слово, поэтому при поиске перебираются только совпавшие слова.
+ * <p>
+ * Слово совпадает только целиком: по краям пробел или край сообщения, иначе короткое слово находилось бы
+ * внутри обычных ({@code "ass"} в {@code "class"}). Звёздочка с краю слова, например {@code "*бля*"},
+ * разрешает с этой стороны продолжение, то есть поиск подстроки.
+ * <p>
+ * Текст и слова приводятся к одному виду {@link #normalize}: нижний регистр, похожие кириллические и латинские
+ * буквы как одна, цифры и символы, похожие на буквы, как буквы, знаки препинания и цветовые теги пропускаются,
+ * поэтому {@code "П.л-0.х0"} найдётся как {@code "плохо"}. Позиции указывают в исходный текст с тегами.
+ */
+class WordFilter {
+
+    private static final byte wordStart = 1, wordEnd = 2; // с этой стороны нужна граница слова
+
+    static final WordFilter empty = compile(new String[0]);
+
+    private final long[] keys;
+    private final int[] targets, fail, ends, output;
+    private final byte[] boundaries;
+    private final int mask;
+
+    private WordFilter(int nodes, int edges) {
+        int capacity = Mathf.nextPowerOfTwo(Math.max(16, edges * 2));
+        keys = new long[capacity];
+        Arrays.fill(keys, -1L);
+        targets = new int[capacity];
+        fail = new int[nodes];
+        ends = new int[nodes];
+        output = new int[nodes];
+        boundaries = new byte[nodes];
+        mask = capacity - 1;
+    }
+
+    public static WordFilter compile(String[] words) {
+        // сначала обычный бор на списках детей, потом перенос рёбер в таблицу
+        int[] nodeChar = new int[16], firstChild = new int[16], nextSibling = new int[16], ends = new int[16];
+        byte[] bounds = new byte[16];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(nextSibling, -1);
+        int nodes = 1;
+
+        StringBuilder normalized = new StringBuilder();
+        for (String word : words) {
+            normalized.setLength(0);
+            normalize(word, normalized, null);
+            if (normalized.length() == 0) {
+                continue;
+            }
+
+            String trimmed = word.trim();
+            byte wordBounds = (byte) ((trimmed.startsWith("*") ? 0 : wordStart) | (trimmed.endsWith("*") ? 0 : wordEnd));
+
+            int node = 0;
+            for (int i = 0; i < normalized.length(); i++) {
+                char c = normalized.charAt(i);
+                int child = firstChild[node];
+                while (child >= 0 && nodeChar[child] != c) {
+                    child = nextSibling[child];
+                }
+
+                if (child < 0) {
+                    if (nodes == nodeChar.length) {
+                        int size = nodes * 2;
+                        nodeChar = Arrays.copyOf(nodeChar, size);
+                        ends = Arrays.copyOf(ends, size);
+                        bounds = Arrays.copyOf(bounds, size);
+                        firstChild = Arrays.copyOf(firstChild, size);
+                        nextSibling = Arrays.copyOf(nextSibling, size);
+                        Arrays.fill(firstChild, nodes, size, -1);
+                        Arrays.fill(nextSibling, nodes, size, -1);
+                    }
+                    child = nodes++;
+                    nodeChar[child] = c;
+                    nextSibling[child] = firstChild[node];
+                    firstChild[node] = child;
+                }
+                node = child;
+            }
+            // одно слово в строгом и свободном виде: остаётся более свободное
+            bounds[node] = ends[node] > 0 ? (byte) (bounds[node] & wordBounds) : wordBounds;
+            ends[node] = normalized.length();
+        }
+
+        WordFilter filter = new WordFilter(nodes, nodes - 1);
+        for (int node = 0; node < nodes; node++) {
+            filter.ends[node] = ends[node];
+            filter.boundaries[node] = bounds[node];
+            for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                filter.put(node, (char) nodeChar[child], child);
+            }
+        }
+
+        // суффиксные ссылки обходом в ширину
+        int[] queue = new int[nodes];
+        int head = 0, tail = 0;
+        for (int child = firstChild[0]; child >= 0; child = nextSibling[child]) {
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                char c = (char) nodeChar[child];
+                int f = filter.fail[node];
+                while (f != 0 && filter.next(f, c) < 0) {
+                    f = filter.fail[f];
+                }
+                int target = filter.next(f, c);
+                f = filter.fail[child] = target >= 0 ? target : 0;
+                filter.output[child] = ends[f] > 0 ? f : filter.output[f];
+                queue[tail++] = child;
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Отмечает в {@code hits} позиции нормализованного текста, попавшие в запрещённые слова.
+     * @return были ли совпадения
+     */
+    public boolean scan(CharSequence normalized, boolean[] hits) {
+        boolean found = false;
+        int node = 0;
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            int target;
+            while ((target = next(node, c)) < 0 && node != 0) {
+                node = fail[node];
+            }
+            node = Math.max(target, 0);
+
+            for (int match = ends[node] > 0 ? node : output[node]; match != 0; match = output[match]) {
+                int start = i - ends[match] + 1;
+                if (bounded(normalized, start, i, boundaries[match])) {
+                    found = true;
+                    Arrays.fill(hits, start, i + 1, true);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Закрывает звёздочками совпавшие слова в исходном тексте, цветовые теги остаются на месте.
+     * @param positions и {@code hits} от {@link #normalize} и {@link #scan} этого текста
+     */
+    static String mask(String text, CharSequence normalized, int[] positions, boolean[] hits) {
+        char[] out = text.toCharArray();
+        for (int i = 0; i < normalized.length(); i++) {
+            if (hits[i]) {
+                // пропущенные при нормализации символы внутри слова тоже закрываются, кроме тегов
+                for (int j = i > 0 && hits[i - 1] ? positions[i - 1] + 1 : positions[i]; j <= positions[i]; j++) {
+                    int tag = out[j] == '[' ? colorTag(text, j) : 0;
+                    if (tag > 0) {
+                        j += tag - 1;
+                    } else {
+                        out[j] = '*';
+                    }
+                }
+            }
+        }
+        return new String(out);
+    }
+
+    private static boolean bounded(CharSequence text, int start, int end, byte bounds) {
+        return ((bounds & wordStart) == 0 || start == 0 || text.charAt(start - 1) == ' ') &&
+                ((bounds & wordEnd) == 0 || end + 1 == text.length() || text.charAt(end + 1) == ' ');
+    }
+
+    /**
+     * Приводит текст к виду, в котором хранятся слова.
+     * @param positions индексы исходных символов для каждого символа результата, может быть {@code null}
+     */
+    static void normalize(CharSequence text, StringBuilder out, int[] positions) {
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '[') {
+                if (i + 1 < text.length() && text.charAt(i + 1) == '[') {
+                    i++; // экранированная скобка, не начало тега
+                    continue;
+                }
+                int tag = colorTag(text, i);
+                if (tag > 0) {
+                    i += tag - 1; // тег не разделяет слова: "пл[red]охо" на экране это "плохо"
+                    continue;
+                }
+            }
+
+            char c = fold(Character.toLowerCase(text.charAt(i)));
+            if (Character.isLetterOrDigit(c) && !Character.isLetterOrDigit(text.charAt(i)) && !inWord(text, i + 1)) {
+                continue; // "плохо!" это слово и восклицательный знак, а не "плохоi"
+            }
+            if (Character.isLetterOrDigit(c)) {
+                space = false;
+            } else if (Character.isWhitespace(c) && !space) {
+                c = ' ';
+                space = true;
+            } else {
+                continue;
+            }
+
+            if (positions != null) {
+                positions[out.length()] = i;
+            }
+            out.append(c);
+        }
+    }
+
+    /**
+     * Длина цветового тега с {@code start}, как их убирает {@link arc.util.Strings#stripColors}: {@code []},
+     * {@code [#rrggbb]} или {@code [имя]}; 0 если это не тег.
+     */
+    static int colorTag(CharSequence text, int start) {
+        int close = -1;
+        for (int i = start + 1; i < text.length() && i <= start + 20; i++) {
+            if (text.charAt(i) == ']') {
+                close = i;
+                break;
+            }
+        }
+        if (close < 0) {
+            return 0;
+        }
+        if (close == start + 1) {
+            return 2;
+        }
+
+        if (text.charAt(start + 1) == '#') {
+            int digits = close - start - 2;
+            for (int i = start + 2; i < close; i++) {
+                if (Character.digit(text.charAt(i), 16) < 0) {
+                    return 0;
+                }
+            }
+            return digits >= 1 && digits <= 8 ? close - start + 1 : 0;
+        }
+        return Colors.get(text.subSequence(start + 1, close).toString()) != null ? close - start + 1 : 0;
+    }
+
+    /** Продолжается ли слово с {@code from}: после похожих на буквы символов идёт буква или цифра. */
+    private static boolean inWord(CharSequence text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                return true;
+            }
+            if (!Character.isLetterOrDigit(fold(c))) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static char fold(char c) {
+        return switch (c) {
+            case 'а', '4', '@' -> 'a';
+            case 'в' -> 'b';
+            case 'с' -> 'c';
+            case 'е', 'ё', '3' -> 'e';
+            case 'н' -> 'h';
+            case 'к' -> 'k';
+            case 'м' -> 'm';
+            case 'о', '0' -> 'o';
+            case 'р' -> 'p';
+            case 'т', '7' -> 't';
+            case 'у' -> 'y';
+            case 'х' -> 'x';
+            case '1', '!', '|' -> 'i';
+            case '5', '$' -> 's';
+            default -> c;
+        };
+    }
+
+    private int next(int node, char c) {
+        long key = (long) node << 16 | c;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return targets[slot];
+            }
+            if (keys[slot] == -1L) {
+                return -1;
+            }
+        }
+    }
+
+    private void put(int node, char c, int target) {
+        long key = (long) node << 16 | c;
+        int slot = mix(key) & mask;
+        while (keys[slot] != -1L) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        targets[slot] = target;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,92 @@
+package sky;
+
+import mindustry.Vars;
+import mindustry.game.Teams;
+import mindustry.gen.Building;
+import mindustry.gen.Groups;
+import mindustry.gen.Player;
+import mindustry.gen.Unit;
+
+import java.util.*;
+
+/**
+ * Неизменяемый снимок мира для {@code /jsq}, строится в игровом потоке за один проход по игрокам, юнитам и постройкам.
+ * <p>
+ * Внутри только строки, числа, логические значения, списки и словари, поэтому фоновый скрипт читает его без гонок
+ * с тиком и не получает ни одного Java объекта мира. Юниты и постройки сведены в счётчики по типам,
+ * чтобы снимок большой карты не подвешивал тик.
+ */
+class WorldSnapshot {
+
+    /** Вызывать из игрового потока. */
+    static Map<String, Object> capture() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("map", Vars.state.map == null ? "" : Vars.state.map.plainName());
+        state.put("mode", Vars.state.rules.mode() == null ? "" : Vars.state.rules.mode().name());
+        state.put("wave", Vars.state.wave);
+        state.put("enemies", Vars.state.enemies);
+        state.put("tick", Vars.state.tick);
+        state.put("paused", Vars.state.isPaused());
+
+        List<Object> players = new ArrayList<>();
+        for (Player player : Groups.player) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("id", player.id);
+            entry.put("name", player.plainName());
+            entry.put("uuid", player.uuid());
+            entry.put("admin", player.admin);
+            entry.put("team", player.team().name);
+            entry.put("x", player.x);
+            entry.put("y", player.y);
+            entry.put("unit", player.dead() ? "" : player.unit().type.name);
+            players.add(Collections.unmodifiableMap(entry));
+        }
+
+        Map<String, Map<String, Object>> teams = new LinkedHashMap<>();
+        for (Teams.TeamData data : Vars.state.teams.getActive()) {
+            Map<String, Object> items = new LinkedHashMap<>();
+            Building core = data.core();
+            if (core != null) {
+                core.items.each((item, amount) -> items.put(item.name, amount));
+            }
+            team(teams, data.team.name).put("cores", data.cores.size);
+            team(teams, data.team.name).put("items", Collections.unmodifiableMap(items));
+        }
+
+        for (Unit unit : Groups.unit) {
+            increment(team(teams, unit.team.name), "units", unit.type.name);
+        }
+        for (Building building : Groups.build) {
+            increment(team(teams, building.team.name), "blocks", building.block.name);
+        }
+
+        Map<String, Object> frozenTeams = new LinkedHashMap<>();
+        for (var team : teams.entrySet()) {
+            Map<String, Object> entry = team.getValue();
+            entry.replaceAll((key, value) -> value instanceof Map<?, ?> map ? Collections.unmodifiableMap(map) : value);
+            frozenTeams.put(team.getKey(), Collections.unmodifiableMap(entry));
+        }
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("state", Collections.unmodifiableMap(state));
+        snapshot.put("players", Collections.unmodifiableList(players));
+        snapshot.put("teams", Collections.unmodifiableMap(frozenTeams));
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    private static Map<String, Object> team(Map<String, Map<String, Object>> teams, String name) {
+        return teams.computeIfAbsent(name, n -> {
+            Map<String, Object> team = new LinkedHashMap<>();
+            team.put("cores", 0);
+            team.put("items", Map.of());
+            team.put("units", new LinkedHashMap<String, Integer>());
+            team.put("blocks", new LinkedHashMap<String, Integer>());
+            return team;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void increment(Map<String, Object> team, String group, String type) {
+        ((Map<String, Integer>) team.get(group)).merge(type, 1, Integer::sum);
+    }
+}
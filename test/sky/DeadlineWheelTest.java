@@ -0,0 +1,122 @@
+package sky;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadlineWheelTest {
+
+    private final List<String> fired = new ArrayList<>();
+
+    private Runnable task(String name) {
+        return () -> fired.add(name);
+    }
+
+    @Test
+    void firesOnlyAfterTheDeadline() {
+        DeadlineWheel wheel = new DeadlineWheel(100, 8);
+        wheel.schedule(task("a"), 0, 250);
+
+        wheel.advance(200);
+        assertTrue(fired.isEmpty());
+        wheel.advance(300);
+        assertEquals(List.of("a"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void deadlinesBeyondOneTurnWaitForTheirTurn() {
+        DeadlineWheel wheel = new DeadlineWheel(100, 8); // оборот 800 мс
+        wheel.schedule(task("near"), 0, 100);
+        wheel.schedule(task("far"), 0, 900); // тот же слот, что и near, но через оборот
+
+        wheel.advance(100);
+        assertEquals(List.of("near"), fired);
+        assertEquals(1, wheel.size());
+
+        for (long now = 200; now < 900; now += 100) {
+            wheel.advance(now);
+        }
+        assertEquals(List.of("near"), fired);
+
+        wheel.advance(900);
+        assertEquals(List.of("near", "far"), fired);
+    }
+
+    @Test
+    void longPauseFiresEverythingOverdue() {
+        DeadlineWheel wheel = new DeadlineWheel(100, 8);
+        wheel.schedule(task("a"), 0, 300);
+        wheel.schedule(task("b"), 0, 1500);
+        wheel.schedule(task("c"), 0, 5000);
+
+        wheel.advance(2000);
+        assertEquals(2, fired.size());
+        assertTrue(fired.containsAll(List.of("a", "b")));
+        assertEquals(1, wheel.size());
+
+        wheel.advance(5000);
+        assertEquals(3, fired.size());
+    }
+
+    @Test
+    void taskCanRescheduleItself() {
+        DeadlineWheel wheel = new DeadlineWheel(100, 8);
+        long[] now = {0};
+        Runnable[] reminder = new Runnable[1];
+        reminder[0] = () -> {
+            fired.add("tick@" + now[0]);
+            if (fired.size() < 3) {
+                wheel.schedule(reminder[0], now[0], 0); // нулевая задержка всё равно уходит на следующий тик
+            }
+        };
+        wheel.schedule(reminder[0], 0, 200);
+
+        for (now[0] = 100; now[0] <= 1000; now[0] += 100) {
+            wheel.advance(now[0]);
+        }
+        assertEquals(List.of("tick@200", "tick@300", "tick@400"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelledDeadlineDoesNotFire() {
+        DeadlineWheel wheel = new DeadlineWheel(100, 8);
+        DeadlineWheel.Deadline kick = wheel.schedule(task("kick"), 0, 200);
+        DeadlineWheel.Deadline[] other = new DeadlineWheel.Deadline[1];
+        // задача отменяет соседа по слоту, который уже отобран для запуска
+        wheel.schedule(() -> {
+            fired.add("first");
+            other[0].cancel();
+        }, 0, 300);
+        other[0] = wheel.schedule(task("second"), 0, 300);
+
+        assertTrue(kick.cancel());
+        assertFalse(kick.cancel());
+        assertFalse(kick.isPending());
+
+        wheel.advance(400);
+        assertEquals(List.of("first"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void failingTaskDoesNotStopTheSlot() {
+        DeadlineWheel wheel = new DeadlineWheel(100, 8);
+        wheel.schedule(() -> {
+            throw new IllegalStateException("boom");
+        }, 0, 100);
+        wheel.schedule(task("after"), 0, 100);
+
+        wheel.advance(100);
+        assertEquals(List.of("after"), fired);
+    }
+
+    @Test
+    void slotCountMustBePowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new DeadlineWheel(100, 6));
+    }
+}
@@ -0,0 +1,102 @@
+package sky;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    private static Config.Metrics endpoint() {
+        Config.Metrics config = new Config.Metrics();
+        config.enabled = true;
+        config.port = 0; // свободный порт
+        return config;
+    }
+
+    private static String scrape(int port) throws IOException {
+        HttpURLConnection con = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/metrics").openConnection();
+        try (InputStream in = con.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } finally {
+            con.disconnect();
+        }
+    }
+
+    private static long liveExecutorThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("rcr-metrics") && thread.isAlive())
+                .count();
+    }
+
+    @Test
+    void bucketsIncludeTheirUpperBound() {
+        Metrics.Probe probe = new Metrics().probe("hook");
+        probe.recordNanos(0);
+        probe.recordNanos(1000); // ровно 1 мкс
+        probe.recordNanos(1001);
+        probe.recordNanos(2000);
+        probe.recordNanos(2001);
+        probe.recordNanos(4000);
+
+        assertEquals(2, probe.buckets[0].sum());
+        assertEquals(2, probe.buckets[1].sum());
+        assertEquals(2, probe.buckets[2].sum());
+        assertEquals(4, probe.percentileMicros(1));
+    }
+
+    @Test
+    void slowCallsGoToOverflow() {
+        Metrics.Probe probe = new Metrics().probe("hook");
+        probe.recordNanos((1L << 20) * 1000);
+        probe.recordNanos((1L << 20) * 1000 + 1);
+
+        assertEquals(1, probe.buckets[Metrics.bucketCount - 1].sum());
+        assertEquals(1, probe.buckets[Metrics.bucketCount].sum());
+    }
+
+    @Test
+    void exportedBucketsAreCumulativeAndInclusive() {
+        Metrics metrics = new Metrics();
+        Metrics.Probe probe = metrics.probe("hook");
+        probe.recordNanos(1000);
+        probe.recordNanos(2000);
+        probe.recordNanos(3000);
+
+        String text = metrics.prometheus();
+        assertTrue(text.contains("rcr_plugin_hook_seconds_bucket{hook=\"hook\",le=\"0.000001\"} 1\n"), text);
+        assertTrue(text.contains("rcr_plugin_hook_seconds_bucket{hook=\"hook\",le=\"0.000002\"} 2\n"), text);
+        assertTrue(text.contains("rcr_plugin_hook_seconds_bucket{hook=\"hook\",le=\"0.000004\"} 3\n"), text);
+        assertTrue(text.contains("rcr_plugin_hook_seconds_bucket{hook=\"hook\",le=\"+Inf\"} 3\n"), text);
+        assertTrue(text.contains("rcr_plugin_hook_seconds_count{hook=\"hook\"} 3\n"), text);
+    }
+
+    @Test
+    void restartDoesNotLeakExecutors() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.counter("restarts").increment();
+        long before = liveExecutorThreads();
+        try {
+            for (int i = 0; i < 3; i++) {
+                metrics.serve(endpoint());
+                assertTrue(scrape(metrics.port()).contains("rcr_plugin_events_total{event=\"restarts\"} 1"));
+            }
+        } finally {
+            Config.Metrics disabled = endpoint();
+            disabled.enabled = false;
+            metrics.serve(disabled);
+        }
+        assertEquals(-1, metrics.port());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (liveExecutorThreads() > before && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(before, liveExecutorThreads());
+    }
+}
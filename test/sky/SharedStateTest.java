@@ -0,0 +1,142 @@
+package sky;
+
+import arc.struct.Seq;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedStateTest {
+
+    @TempDir
+    Path directory;
+
+    private final Metrics metrics = new Metrics();
+    private final byte[] payload = new byte[512];
+
+    private SharedState open(String instance, int capacity) throws IOException {
+        Config.Shared config = new Config.Shared();
+        config.capacity = capacity;
+        return SharedState.open(directory, instance, 6567, config, metrics);
+    }
+
+    private static SharedState.Peer peer(SharedState reader, String name) throws IOException {
+        reader.discover();
+        for (SharedState.Peer peer : reader.peers()) {
+            if (peer.name.equals(name)) {
+                return peer;
+            }
+        }
+        return fail("Peer " + name + " not found");
+    }
+
+    private static void announce(SharedState writer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            writer.publish(SharedState.Kind.announce, "", "", "message " + i, i);
+        }
+    }
+
+    @Test
+    void readerReceivesEventsPublishedAfterItAttached() throws IOException {
+        SharedState writer = open("a", 16), reader = open("b", 16);
+        announce(writer, 0, 2); // до подключения читателя
+        SharedState.Peer peer = peer(reader, "a");
+        writer.publish(SharedState.Kind.ban, "uuid", "1.2.3.4", "reason", 60_000);
+
+        Seq<SharedState.Event> events = new Seq<>();
+        assertTrue(peer.poll(payload, events));
+        assertEquals(1, events.size);
+        assertEquals(new SharedState.Event("a", SharedState.Kind.ban, "uuid", "1.2.3.4", "reason", 60_000), events.first());
+    }
+
+    @Test
+    void writerLappingTheReaderLosesOnlyOverwrittenEvents() throws IOException {
+        SharedState writer = open("a", 16), reader = open("b", 16);
+        SharedState.Peer peer = peer(reader, "a");
+        announce(writer, 0, 16 + 5);
+
+        Seq<SharedState.Event> events = new Seq<>();
+        assertTrue(peer.poll(payload, events));
+        assertEquals(16, events.size);
+        assertEquals(5, events.first().value(), "the oldest five slots were overwritten");
+        assertEquals(20, events.peek().value());
+        assertEquals(5, metrics.counter("shared.lost").sum());
+    }
+
+    @Test
+    void slotBeingRewrittenIsSkipped() throws IOException {
+        SharedState writer = open("a", 16), reader = open("b", 16);
+        SharedState.Peer peer = peer(reader, "a");
+        announce(writer, 0, 3);
+
+        // писатель обогнал читателя: второй слот уже помечен как записываемый под номер на кольцо вперёд
+        try (FileChannel channel = FileChannel.open(directory.resolve("a" + SharedState.extension),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            buffer.order(ByteOrder.nativeOrder()).putLong(64 + 512, -(1 + 16 + 1));
+        }
+
+        Seq<SharedState.Event> events = new Seq<>();
+        assertTrue(peer.poll(payload, events));
+        assertEquals(2, events.size);
+        assertEquals(0, events.get(0).value());
+        assertEquals(2, events.get(1).value());
+        assertEquals(1, metrics.counter("shared.lost").sum());
+    }
+
+    @Test
+    void reopeningKeepsTheSequence() throws IOException {
+        announce(open("a", 16), 0, 3);
+        SharedState reader = open("b", 16);
+        SharedState.Peer peer = peer(reader, "a");
+
+        SharedState writer = open("a", 16);
+        writer.publish(SharedState.Kind.kick, "uuid", "", "", 1000);
+
+        Seq<SharedState.Event> events = new Seq<>();
+        assertTrue(peer.poll(payload, events));
+        assertEquals(1, events.size);
+        assertEquals(SharedState.Kind.kick, events.first().kind());
+    }
+
+    @Test
+    void fileRecreatedWithAnotherRingSizeIsReopened() throws IOException {
+        open("a", 16);
+        SharedState reader = open("b", 16);
+        SharedState.Peer stale = peer(reader, "a");
+
+        SharedState writer = open("a", 32);
+        writer.publish(SharedState.Kind.unban, "uuid", "", "", 0);
+        assertFalse(stale.poll(payload, new Seq<>()), "the old mapping has the wrong ring size");
+
+        reader.forget(stale);
+        SharedState.Peer fresh = peer(reader, "a");
+        assertNotSame(stale, fresh);
+        writer.publish(SharedState.Kind.verified, "uuid", "1.2.3.4", "", 5000);
+
+        Seq<SharedState.Event> events = new Seq<>();
+        assertTrue(fresh.poll(payload, events));
+        assertEquals(1, events.size);
+        assertEquals(SharedState.Kind.verified, events.first().kind());
+    }
+
+    @Test
+    void longTextIsCutOnCharacterBoundary() throws IOException {
+        SharedState writer = open("a", 16), reader = open("b", 16);
+        SharedState.Peer peer = peer(reader, "a");
+        writer.publish(SharedState.Kind.announce, "", "", "ж".repeat(400), 0);
+
+        Seq<SharedState.Event> events = new Seq<>();
+        assertTrue(peer.poll(payload, events));
+        String text = events.first().text();
+        assertTrue(text.length() > 100 && text.length() < 400);
+        assertEquals("ж".repeat(text.length()), text);
+    }
+}
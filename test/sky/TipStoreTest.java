@@ -0,0 +1,131 @@
+package sky;
+
+import arc.files.Fi;
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TipStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final JsonFactory factory = new JsonFactory();
+
+    private Fi source(String json) throws IOException {
+        Path path = directory.resolve("rcr-tips.json");
+        Files.writeString(path, json, StandardCharsets.UTF_8);
+        return new Fi(path.toFile());
+    }
+
+    private Fi index() {
+        return new Fi(directory.resolve(TipStore.indexFileName).toFile());
+    }
+
+    /** Тексты всех подсказок, которые выдаёт последовательный обход контекста. */
+    private static Set<String> shown(TipStore store, String locale, String map, String mode) {
+        Set<String> texts = new HashSet<>();
+        for (int i = 0; i < store.size() * 2; i++) {
+            int entry = store.next(locale, "en", map, mode, false);
+            if (entry >= 0) {
+                texts.add(store.text(entry));
+            }
+        }
+        return texts;
+    }
+
+    @Test
+    void tipMatchesWhenContextHasAllItsTags() throws IOException {
+        TipStore store = TipStore.open(source("""
+                {"tips": [
+                  "any",
+                  {"text": "english", "locale": "en"},
+                  {"text": "русский", "locale": "ru"},
+                  {"text": "ground zero", "tags": ["map:Ground Zero"]},
+                  {"text": "english pvp", "locale": "en", "tags": ["mode:pvp"]}
+                ]}"""), index(), factory);
+
+        assertEquals(5, store.size());
+        assertEquals(Set.of("any", "english"), shown(store, "en", "Frozen Forest", "survival"));
+        assertEquals(Set.of("any", "english", "ground zero"), shown(store, "en", "Ground Zero", "survival"));
+        assertEquals(Set.of("any", "english", "english pvp"), shown(store, "en", "Frozen Forest", "pvp"));
+        assertEquals(Set.of("any", "русский"), shown(store, "ru", "Frozen Forest", "pvp"));
+        // на языке без подсказок берётся запасной
+        assertEquals(Set.of("any", "english"), shown(store, "de", "Frozen Forest", "survival"));
+    }
+
+    @Test
+    void nothingMatchingGivesMinusOne() throws IOException {
+        TipStore store = TipStore.open(source("""
+                {"tips": [{"text": "pvp only", "tags": ["mode:pvp"]}]}"""), index(), factory);
+
+        assertEquals(-1, store.next("en", "en", "map", "survival", false));
+        assertEquals(-1, store.next("en", "en", "map", "survival", true));
+        assertEquals(-1, TipStore.empty().next("en", "en", "map", "survival", true));
+    }
+
+    @Test
+    void weightedSelectionFollowsWeights() throws IOException {
+        TipStore store = TipStore.open(source("""
+                {"tips": [{"text": "rare", "weight": 1}, {"text": "common", "weight": 3}, {"text": "hidden", "tags": ["mode:pvp"], "weight": 100}]}"""),
+                index(), factory);
+
+        int common = 0, draws = 8000;
+        for (int i = 0; i < draws; i++) {
+            String text = store.text(store.next("en", "en", "map", "survival", true));
+            assertNotEquals("hidden", text);
+            if (text.equals("common")) {
+                common++;
+            }
+        }
+        assertTrue(common > draws * 0.70 && common < draws * 0.80, "common was drawn " + common + " times");
+    }
+
+    @Test
+    void invalidTipsAreRejected() throws IOException {
+        assertThrows(IOException.class, () -> TipStore.open(source("""
+                {"tips": [{"text": "zero", "weight": 0}]}"""), index(), factory));
+        assertThrows(IOException.class, () -> TipStore.open(source("""
+                {"tips": [{"weight": 2}]}"""), index(), factory));
+    }
+
+    @Test
+    void indexIsRebuiltOnlyWhenSourceChanges() throws IOException {
+        Fi source = source("""
+                {"other": {"skipped": [1, 2]}, "tips": ["first", "second"]}""");
+        TipStore first = TipStore.open(source, index(), factory);
+        assertEquals(2, first.size());
+
+        TipStore reopened = TipStore.open(source, index(), factory);
+        assertTrue(first.sameSource(reopened));
+        assertTrue(first.sameSource(TipStore.openIndex(index())));
+
+        Path path = source.file().toPath();
+        FileTime modified = Files.getLastModifiedTime(path);
+        Files.writeString(path, """
+                {"tips": ["first", "second", "third"]}""", StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(modified.toMillis() + 1000));
+
+        TipStore rebuilt = TipStore.open(source, index(), factory);
+        assertFalse(first.sameSource(rebuilt));
+        assertEquals(3, rebuilt.size());
+        assertEquals("third", rebuilt.text(2));
+        // старый снимок остаётся читаемым после замены файла индекса
+        assertEquals("second", first.text(1));
+    }
+
+    @Test
+    void missingIndexIsNotOpened() throws IOException {
+        assertNull(TipStore.openIndex(index()));
+    }
+}
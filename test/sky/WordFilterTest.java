@@ -0,0 +1,100 @@
+package sky;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WordFilterTest {
+
+    private static boolean matches(WordFilter filter, String message) {
+        StringBuilder normalized = new StringBuilder();
+        WordFilter.normalize(message, normalized, new int[message.length()]);
+        return filter.scan(normalized, new boolean[normalized.length()]);
+    }
+
+    /** Как {@link ChatModeration}: без совпадений сообщение возвращается как есть. */
+    private static String mask(WordFilter filter, String message) {
+        StringBuilder normalized = new StringBuilder();
+        int[] positions = new int[message.length()];
+        WordFilter.normalize(message, normalized, positions);
+        boolean[] hits = new boolean[normalized.length()];
+        return filter.scan(normalized, hits) ? WordFilter.mask(message, normalized, positions, hits) : message;
+    }
+
+    @Test
+    void matchesWholeWordsOnly() {
+        WordFilter filter = WordFilter.compile(new String[]{"ass", "he"});
+        assertTrue(matches(filter, "you ass"));
+        assertTrue(matches(filter, "ASS"));
+        assertTrue(matches(filter, "he said"));
+        assertFalse(matches(filter, "this class is fine"));
+        assertFalse(matches(filter, "assignment"));
+        assertFalse(matches(filter, "the hen"));
+    }
+
+    @Test
+    void starAllowsSubstringOnItsSide() {
+        WordFilter filter = WordFilter.compile(new String[]{"*hole*", "she*"});
+        assertTrue(matches(filter, "asshole"));
+        assertTrue(matches(filter, "holes"));
+        assertTrue(matches(filter, "sheep"));
+        assertFalse(matches(filter, "ashes"), "she* still needs a boundary before the word");
+    }
+
+    @Test
+    void trailingSymbolsDoNotJoinTheWord() {
+        WordFilter filter = WordFilter.compile(new String[]{"ass", "shit"});
+        assertTrue(matches(filter, "you ass!"));
+        assertTrue(matches(filter, "ass!!!"));
+        assertTrue(matches(filter, "sh!t"));
+        assertTrue(matches(filter, "$hit"));
+    }
+
+    @Test
+    void foldsCyrillicAndLookalikes() {
+        WordFilter filter = WordFilter.compile(new String[]{"плохо"});
+        assertTrue(matches(filter, "ПЛОХО"));
+        assertTrue(matches(filter, "это п.л-0.х0"));
+        assertTrue(matches(filter, "плoxo")); // латинские o и x
+        assertFalse(matches(filter, "хорошо"));
+        assertFalse(matches(filter, "неплохой"));
+    }
+
+    @Test
+    void reportsOverlappingWords() {
+        WordFilter filter = WordFilter.compile(new String[]{"bad", "bad word", "word"});
+        assertEquals("a ******** here", mask(filter, "a bad word here"));
+        assertEquals("*** ok", mask(filter, "bad ok"));
+
+        WordFilter substrings = WordFilter.compile(new String[]{"*ab*", "*bc*"});
+        assertEquals("x***x", mask(substrings, "xabcx"));
+    }
+
+    @Test
+    void sameWordStrictAndLenientKeepsLenient() {
+        WordFilter filter = WordFilter.compile(new String[]{"bad", "bad*"});
+        assertTrue(matches(filter, "badly"));
+    }
+
+    @Test
+    void masksAroundColorTags() {
+        WordFilter filter = WordFilter.compile(new String[]{"bad"});
+        assertEquals("[red]***[] word", mask(filter, "[red]bad[] word"));
+        assertEquals("*[#ff0000]**", mask(filter, "b[#ff0000]ad"));
+        assertEquals("[scarlet]good []word", mask(filter, "[scarlet]good []word"));
+    }
+
+    @Test
+    void escapedBracketIsNotATag() {
+        WordFilter filter = WordFilter.compile(new String[]{"red"});
+        assertEquals("[[***]", mask(filter, "[[red]"));
+        assertEquals("[red]fine", mask(filter, "[red]fine"));
+    }
+
+    @Test
+    void unchangedMessageIsReturnedAsIs() {
+        String message = "[gold]hello [white]there";
+        assertSame(message, mask(WordFilter.compile(new String[]{"bad"}), message));
+        assertSame(message, mask(WordFilter.empty, message));
+    }
+}